@@ -0,0 +1,60 @@
+package org.ian;
+
+import java.lang.management.ManagementFactory;
+
+// Bytes asignados en el heap por el hilo actual entre begin() y end(). Las regiones anidadas
+// en el mismo hilo (una tarea que ejecuta otra al hacer join, o computeInto dentro de
+// compute) devuelven 0: solo cuenta la exterior, así que sumar todas las regiones de una
+// conversión no cuenta dos veces la misma asignación.
+public final class AllocationTracker {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    private AllocationTracker() {
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                    && bean.isThreadAllocatedMemorySupported()) {
+                if (!bean.isThreadAllocatedMemoryEnabled()) {
+                    bean.setThreadAllocatedMemoryEnabled(true);
+                }
+                return bean;
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            // JVM sin medición por hilo: las regiones devuelven 0
+        }
+        return null;
+    }
+
+    public static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    // Abrir una región; devuelve la marca que hay que pasar a end()
+    public static long begin() {
+        if (THREADS == null) {
+            return -1;
+        }
+        int[] depth = DEPTH.get();
+        if (depth[0]++ > 0) {
+            return -1;
+        }
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    // Cerrar la región y devolver los bytes asignados en ella (0 si estaba anidada)
+    public static long end(long mark) {
+        if (THREADS == null) {
+            return 0;
+        }
+        DEPTH.get()[0]--;
+        if (mark < 0) {
+            return 0;
+        }
+        return Math.max(0, THREADS.getCurrentThreadAllocatedBytes() - mark);
+    }
+}
@@ -0,0 +1,230 @@
+package org.ian;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// API asíncrona: convert() devuelve enseguida un CompletableFuture con el resultado, sin
+// bloquear al que llama. Cada llamada se ejecuta en el Executor elegido (el ForkJoinPool de
+// conversión, hilos virtuales o uno propio) con su propio conversor: los documentos pequeños
+// con JsonParser en ese mismo hilo y los grandes con JsonParserForkJoin sobre el pool compartido,
+// sin crear un pool por llamada. Un límite de conversiones en curso hace de contrapresión: por
+// encima se rechaza en lugar de encolar, y un timeout o cancel() del futuro cancela el trabajo.
+public class AsyncConverter implements AutoCloseable {
+
+    public enum ExecutorKind {
+        // Las llamadas se ejecutan en el propio pool de conversión
+        FORK_JOIN,
+        // Un hilo virtual por llamada; la parte paralela sigue yendo al pool
+        VIRTUAL_THREADS
+    }
+
+    // XML y tiempos de una conversión
+    public static class ConversionResult {
+        private final String xml;
+        private final AutoConverter.Mode mode;
+        private final int inputLength;
+        private final long queuedNanos;
+        private final long conversionNanos;
+
+        ConversionResult(String xml, AutoConverter.Mode mode, int inputLength, long queuedNanos, long conversionNanos) {
+            this.xml = xml;
+            this.mode = mode;
+            this.inputLength = inputLength;
+            this.queuedNanos = queuedNanos;
+            this.conversionNanos = conversionNanos;
+        }
+
+        public String getXml() { return xml; }
+        public AutoConverter.Mode getMode() { return mode; }
+        public int getInputLength() { return inputLength; }
+        // Espera en el Executor antes de empezar
+        public long getQueuedNanos() { return queuedNanos; }
+        public long getConversionNanos() { return conversionNanos; }
+    }
+
+    private final Executor executor;
+    private final ForkJoinPool pool;
+    // Executor creado aquí (hilos virtuales) que close() debe cerrar
+    private final ExecutorService ownedExecutor;
+    private final int maxInFlight;
+    private final Semaphore permits;
+
+    private final ShapeRegistry shapes = new ShapeRegistry();
+    private volatile JsonReader.Limits limits = JsonReader.Limits.DEFAULT;
+    private volatile int minForkJoinLength = AutoConverter.Calibration.DEFAULT.getMinForkJoinLength();
+    private volatile boolean pipelined;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    public AsyncConverter(ExecutorKind kind, int maxInFlight) {
+        this(kind, ForkJoinPool.commonPool(), maxInFlight);
+    }
+
+    public AsyncConverter(ExecutorKind kind, ForkJoinPool pool, int maxInFlight) {
+        this(kind == ExecutorKind.FORK_JOIN ? pool : Executors.newVirtualThreadPerTaskExecutor(), pool,
+                maxInFlight, kind == ExecutorKind.VIRTUAL_THREADS);
+    }
+
+    // Executor del que llama; no se cierra con close()
+    public AsyncConverter(Executor executor, ForkJoinPool pool, int maxInFlight) {
+        this(executor, pool, maxInFlight, false);
+    }
+
+    private AsyncConverter(Executor executor, ForkJoinPool pool, int maxInFlight, boolean owned) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Límite de conversiones en curso no válido: " + maxInFlight);
+        }
+        this.executor = executor;
+        this.pool = pool;
+        this.ownedExecutor = owned ? (ExecutorService) executor : null;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    public void setLimits(JsonReader.Limits limits) {
+        this.limits = limits;
+    }
+
+    // Documentos más cortos se convierten en secuencial en el hilo del Executor
+    public void setMinForkJoinLength(int minForkJoinLength) {
+        this.minForkJoinLength = minForkJoinLength;
+    }
+
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public CompletableFuture<ConversionResult> convert(String json) {
+        return convert(json, null);
+    }
+
+    // Con 'timeout' el futuro falla con TimeoutException al vencer y la conversión se cancela
+    public CompletableFuture<ConversionResult> convert(String json, Duration timeout) {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Hay " + maxInFlight + " conversiones en curso"));
+        }
+
+        CompletableFuture<ConversionResult> future = new CompletableFuture<>();
+        Call call = new Call(json, future);
+        try {
+            executor.execute(call);
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            rejected.increment();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        if (timeout != null) {
+            future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                call.cancel(error);
+            }
+        });
+        return future;
+    }
+
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    // Una llamada: conversor propio (los monitores y la cancelación no se comparten entre
+    // conversiones simultáneas) y el permiso se devuelve al terminar el trabajo, no el futuro
+    private final class Call implements Runnable {
+        private final String json;
+        private final CompletableFuture<ConversionResult> future;
+        private final long submitted = System.nanoTime();
+        private volatile JsonParser sequential;
+        private volatile JsonParserForkJoin forkJoin;
+        private volatile boolean cancelRequested;
+
+        Call(String json, CompletableFuture<ConversionResult> future) {
+            this.json = json;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (future.isDone()) {
+                    return; // Venció o se canceló mientras esperaba
+                }
+                long start = System.nanoTime();
+                String xml;
+                AutoConverter.Mode mode;
+                if (json.length() < minForkJoinLength) {
+                    mode = AutoConverter.Mode.SECUENCIAL;
+                    JsonParser parser = new JsonParser(json, limits);
+                    parser.setShapeRegistry(shapes);
+                    // Publicar el conversor y después releer cancelRequested: un cancel() concurrente
+                    // ve el conversor o deja la marca, y la cancelación se aplica antes de empezar
+                    sequential = parser;
+                    if (cancelRequested) parser.cancel();
+                    xml = parser.toXML();
+                } else {
+                    mode = AutoConverter.Mode.FORK_JOIN;
+                    JsonParserForkJoin converter = new JsonParserForkJoin(pool);
+                    converter.setLimits(limits);
+                    converter.setShapeRegistry(shapes);
+                    converter.setPipelined(pipelined);
+                    forkJoin = converter;
+                    // Sin conversión en curso la cancelación queda pendiente: toXML la atiende al
+                    // arrancar en lugar de descartarla al reiniciar el monitor
+                    if (cancelRequested) converter.cancel();
+                    xml = converter.toXML(json);
+                }
+                long end = System.nanoTime();
+                future.complete(new ConversionResult(xml, mode, json.length(), start - submitted, end - start));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                permits.release();
+            }
+        }
+
+        void cancel(Throwable reason) {
+            if (reason instanceof TimeoutException) {
+                timedOut.increment();
+            } else if (reason instanceof CancellationException) {
+                cancelled.increment();
+            } else {
+                return; // La conversión ya terminó con error
+            }
+            cancelRequested = true;
+            JsonParser parser = sequential;
+            if (parser != null) parser.cancel();
+            JsonParserForkJoin converter = forkJoin;
+            if (converter != null) converter.cancel();
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package org.ian;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+// Conversor que elige por documento entre JsonParser y JsonParserForkJoin a partir de señales
+// baratas (tamaño, forma de los primeros caracteres y carga del pool) y de reglas calibradas
+public class AutoConverter {
+
+    public enum Mode {
+        SECUENCIAL,
+        FORK_JOIN
+    }
+
+    // Resultado de la decisión con las señales que la justifican
+    public static class Decision {
+        private final Mode mode;
+        private final String reason;
+        private final int length;
+        private final int topLevelFanOut;
+        private final int depth;
+        private final int activeThreads;
+
+        Decision(Mode mode, String reason, int length, int topLevelFanOut, int depth, int activeThreads) {
+            this.mode = mode;
+            this.reason = reason;
+            this.length = length;
+            this.topLevelFanOut = topLevelFanOut;
+            this.depth = depth;
+            this.activeThreads = activeThreads;
+        }
+
+        public Mode getMode() { return mode; }
+        public String getReason() { return reason; }
+        public int getLength() { return length; }
+        public int getTopLevelFanOut() { return topLevelFanOut; }
+        public int getDepth() { return depth; }
+        public int getActiveThreads() { return activeThreads; }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s [longitud=%d, abanico=%d, profundidad=%d, hilos activos=%d]",
+                    mode, reason, length, topLevelFanOut, depth, activeThreads);
+        }
+    }
+
+    // Reglas de decisión; se obtienen con calibrate() y se guardan en un archivo .properties
+    public static class Calibration {
+        // Ruta por defecto, sustituible con -Dxmljson.calibration=<archivo>
+        public static final Path DEFAULT_PATH = Paths.get(System.getProperty("xmljson.calibration",
+                Paths.get(System.getProperty("user.home"), ".xml-json", "calibration.properties").toString()));
+
+        public static final Calibration DEFAULT = new Calibration(256 * 1024, 8, 0.75);
+
+        private final int minForkJoinLength;
+        private final int minFanOut;
+        private final double maxPoolLoad;
+
+        public Calibration(int minForkJoinLength, int minFanOut, double maxPoolLoad) {
+            this.minForkJoinLength = minForkJoinLength;
+            this.minFanOut = minFanOut;
+            this.maxPoolLoad = maxPoolLoad;
+        }
+
+        // Documentos más cortos se convierten en secuencial
+        public int getMinForkJoinLength() { return minForkJoinLength; }
+        // Abanico mínimo (raíz o un nivel por debajo en documentos profundos) para paralelizar
+        public int getMinFanOut() { return minFanOut; }
+        // Fracción de hilos del pool ocupados a partir de la cual no se le envía más trabajo
+        public double getMaxPoolLoad() { return maxPoolLoad; }
+
+        // Leer la calibración guardada; si no existe o no se puede leer se usan los valores por defecto
+        public static Calibration load(Path path) {
+            if (!Files.isRegularFile(path)) {
+                return DEFAULT;
+            }
+            Properties properties = new Properties();
+            try (Reader in = Files.newBufferedReader(path)) {
+                properties.load(in);
+                return new Calibration(
+                        Integer.parseInt(properties.getProperty("minForkJoinLength",
+                                String.valueOf(DEFAULT.minForkJoinLength))),
+                        Integer.parseInt(properties.getProperty("minFanOut",
+                                String.valueOf(DEFAULT.minFanOut))),
+                        Double.parseDouble(properties.getProperty("maxPoolLoad",
+                                String.valueOf(DEFAULT.maxPoolLoad))));
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Calibración no válida en " + path + ": " + e.getMessage());
+                return DEFAULT;
+            }
+        }
+
+        public void save(Path path) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("minForkJoinLength", String.valueOf(minForkJoinLength));
+            properties.setProperty("minFanOut", String.valueOf(minFanOut));
+            properties.setProperty("maxPoolLoad", String.valueOf(maxPoolLoad));
+
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (Writer out = Files.newBufferedWriter(path)) {
+                properties.store(out, "Calibración de AutoConverter (secuencial vs ForkJoin)");
+            }
+        }
+
+        // Medir ambos conversores con documentos sintéticos de tamaño creciente y tomar como
+        // umbral el primer tamaño en que ForkJoin gana de forma consistente
+        public static Calibration calibrate(JsonParserForkJoin forkJoin) {
+            int minLength = Integer.MAX_VALUE;
+
+            for (int records = 16; records <= 32 * 1024; records *= 2) {
+                String json = syntheticDocument(records);
+                long sequential = Long.MAX_VALUE;
+                long parallel = Long.MAX_VALUE;
+
+                for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    new JsonParser(json).toXML();
+                    sequential = Math.min(sequential, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    forkJoin.toXML(json);
+                    parallel = Math.min(parallel, System.nanoTime() - start);
+                }
+
+                if (parallel < sequential) {
+                    minLength = Math.min(minLength, json.length());
+                } else {
+                    minLength = Integer.MAX_VALUE;
+                }
+            }
+
+            return new Calibration(minLength, forkJoin.getListForkThreshold() + 1, DEFAULT.maxPoolLoad);
+        }
+
+        private static String syntheticDocument(int records) {
+            StringBuilder json = new StringBuilder("{\"registros\":[");
+            for (int i = 0; i < records; i++) {
+                if (i > 0) json.append(',');
+                json.append("{\"id\":").append(i)
+                        .append(",\"nombre\":\"registro ").append(i)
+                        .append("\",\"valores\":[").append(i).append(',').append(i * 2).append("]")
+                        .append(",\"detalle\":{\"activo\":").append(i % 2 == 0)
+                        .append(",\"peso\":").append(i * 0.5).append("}}");
+            }
+            return json.append("]}").toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Calibration[minForkJoinLength=%d, minFanOut=%d, maxPoolLoad=%.2f]",
+                    minForkJoinLength, minFanOut, maxPoolLoad);
+        }
+    }
+
+    private static final int CALIBRATION_ROUNDS = 5;
+    // Caracteres inspeccionados para estimar la forma del documento
+    private static final int PROBE_LIMIT = 64 * 1024;
+
+    private final JsonParserForkJoin forkJoin;
+    private volatile Calibration calibration;
+    private volatile Decision lastDecision;
+    private volatile JsonParser current;
+
+    public AutoConverter() {
+        this(new JsonParserForkJoin(), Calibration.load(Calibration.DEFAULT_PATH));
+    }
+
+    public AutoConverter(JsonParserForkJoin forkJoin, Calibration calibration) {
+        this.forkJoin = forkJoin;
+        this.calibration = calibration;
+    }
+
+    public String toXML(String json) {
+        Decision decision = decide(json);
+        lastDecision = decision;
+
+        if (decision.getMode() == Mode.FORK_JOIN) {
+            return forkJoin.toXML(json);
+        }
+
+        JsonParser parser = new JsonParser(json);
+        begin(parser);
+        try {
+            return parser.toXML();
+        } finally {
+            end();
+        }
+    }
+
+    // Misma decisión que toXML, escribiendo el XML por bloques en un Writer
+    public void writeXML(String json, Writer out) throws IOException {
+        Decision decision = decide(json);
+        lastDecision = decision;
+
+        if (decision.getMode() == Mode.FORK_JOIN) {
+            forkJoin.writeXML(json, out);
+            return;
+        }
+
+        JsonParser parser = new JsonParser(json);
+        begin(parser);
+        try {
+            parser.writeXML(out);
+        } finally {
+            end();
+        }
+    }
+
+    public Decision decide(String json) {
+        int length = json.length();
+        // Sin crear el pool si aún no existe: los documentos pequeños no lo necesitan
+        int active = forkJoin.getActiveThreadCount();
+        Calibration rules = calibration;
+
+        if (rules.getMinForkJoinLength() == Integer.MAX_VALUE) {
+            return new Decision(Mode.SECUENCIAL, "ForkJoin no ganó en ningún tamaño de la calibración",
+                    length, -1, -1, active);
+        }
+        if (length < rules.getMinForkJoinLength()) {
+            return new Decision(Mode.SECUENCIAL, "documento pequeño (< " + rules.getMinForkJoinLength() +
+                    " caracteres)", length, -1, -1, active);
+        }
+
+        int[] shape = probeShape(json);
+        int fanOut = shape[0];
+        int depth = shape[1];
+        int nestedFanOut = shape[2];
+        int parallelism = forkJoin.getPoolStats().getParallelism();
+
+        if (parallelism <= 1) {
+            return new Decision(Mode.SECUENCIAL, "pool sin paralelismo", length, fanOut, depth, active);
+        }
+        if (active >= parallelism * rules.getMaxPoolLoad()) {
+            return new Decision(Mode.SECUENCIAL, "pool ocupado (" + active + "/" + parallelism + " hilos)",
+                    length, fanOut, depth, active);
+        }
+        if (fanOut < rules.getMinFanOut() && nestedFanOut < rules.getMinFanOut()) {
+            return new Decision(Mode.SECUENCIAL, "abanico insuficiente para repartir trabajo",
+                    length, fanOut, depth, active);
+        }
+        return new Decision(Mode.FORK_JOIN, "documento grande con abanico " + Math.max(fanOut, nestedFanOut),
+                length, fanOut, depth, active);
+    }
+
+    public Decision getLastDecision() {
+        return lastDecision;
+    }
+
+    public Calibration getCalibration() {
+        return calibration;
+    }
+
+    public void setCalibration(Calibration calibration) {
+        this.calibration = calibration;
+    }
+
+    // Calibrar con el pool de este conversor y guardar el resultado
+    public Calibration calibrate(Path path) throws IOException {
+        Calibration result = Calibration.calibrate(forkJoin);
+        result.save(path);
+        calibration = result;
+        return result;
+    }
+
+    public JsonParserForkJoin getForkJoin() {
+        return forkJoin;
+    }
+
+    // Cancelar la conversión en curso; sin ninguna en curso, la siguiente (en cualquier modo)
+    public synchronized void cancel() {
+        JsonParser parser = current;
+        if (parser != null) {
+            parser.cancel();
+        } else {
+            forkJoin.cancel();
+        }
+    }
+
+    // La conversión secuencial hereda una cancelación que quedó pendiente en el conversor
+    // ForkJoin antes de decidir el modo
+    private synchronized void begin(JsonParser parser) {
+        current = parser;
+        if (forkJoin.getMonitor().takePendingCancel()) {
+            parser.cancel();
+        }
+    }
+
+    private synchronized void end() {
+        current = null;
+    }
+
+    public void shutdown() {
+        forkJoin.shutdown();
+    }
+
+    // Ejecutar la calibración y guardarla: java org.ian.AutoConverter [archivo]
+    public static void main(String[] args) throws IOException {
+        Path path = args.length > 0 ? Paths.get(args[0]) : Calibration.DEFAULT_PATH;
+        AutoConverter auto = new AutoConverter(new JsonParserForkJoin(), Calibration.DEFAULT);
+        Calibration calibration = auto.calibrate(path);
+        System.out.println(calibration + " guardada en " + path);
+    }
+
+    // Sondeo de los primeros PROBE_LIMIT caracteres: {abanico de la raíz, profundidad máxima,
+    // abanico máximo del primer nivel}. Los abanicos se extrapolan si el sondeo no llega al final.
+    static int[] probeShape(String json) {
+        int limit = Math.min(json.length(), PROBE_LIMIT);
+        int depth = 0;
+        int maxDepth = 0;
+        int topLevel = 0;
+        int nested = 0;
+        int maxNested = 0;
+        boolean inString = false;
+
+        for (int i = 0; i < limit; i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (c == '\\') i++;
+                else if (c == '"') inString = false;
+                continue;
+            }
+            switch (c) {
+                case '"':
+                    inString = true;
+                    break;
+                case '{':
+                case '[':
+                    depth++;
+                    maxDepth = Math.max(maxDepth, depth);
+                    if (depth == 2) nested = 1;
+                    else if (depth == 1) topLevel = 1;
+                    break;
+                case '}':
+                case ']':
+                    if (depth == 2) maxNested = Math.max(maxNested, nested);
+                    depth--;
+                    break;
+                case ',':
+                    if (depth == 1) topLevel++;
+                    else if (depth == 2) nested++;
+                    break;
+                default:
+            }
+        }
+        maxNested = Math.max(maxNested, nested);
+
+        if (limit < json.length()) {
+            // Extrapolar linealmente al documento completo
+            double scale = (double) json.length() / limit;
+            topLevel = (int) Math.min(Integer.MAX_VALUE, topLevel * scale);
+            if (depth >= 2) {
+                maxNested = (int) Math.min(Integer.MAX_VALUE, maxNested * scale);
+            }
+        }
+        return new int[]{topLevel, maxDepth, maxNested};
+    }
+}
@@ -0,0 +1,720 @@
+package org.ian;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Lectores de JSON binario (CBOR y Smile) que construyen el mismo modelo de valores que
+// JsonReader: LinkedHashMap con claves internadas, ArrayList o PrimitiveList, String, Long,
+// Double, Boolean y null. Las cadenas llevan su longitud y los números van en binario, así que
+// no hay tokenización; cada valor se convierte como lo haría JsonReader con el texto JSON
+// equivalente (enteros fuera de long como texto, decimales de 16 y 32 bits ampliados sin
+// pérdida a double, como pide RFC 8949), de modo que el XML es idéntico. Igual que JsonReader, la anidación va en una pila explícita.
+public abstract class BinaryJsonReader {
+
+    public enum Format {
+        CBOR,
+        SMILE;
+
+        // Smile empieza por ":)\n"; lo demás se trata como CBOR
+        public static Format detect(byte[] data) {
+            return data.length >= 3 && data[0] == ':' && data[1] == ')' && data[2] == '\n' ? SMILE : CBOR;
+        }
+    }
+
+    private static final int INITIAL_STACK = 32;
+
+    // Devuelto por readValue() cuando el valor es un contenedor recién abierto
+    static final Object OPENED = new Object();
+
+    protected final byte[] data;
+    protected final JsonReader.Limits limits;
+    protected int pos;
+
+    private KeySymbolTable symbols = new KeySymbolTable();
+
+    // Pila explícita: contenedor abierto, clave pendiente y elementos que faltan (-1 si el
+    // contenedor termina con una marca en lugar de llevar su longitud)
+    private Object[] containers = new Object[INITIAL_STACK];
+    private String[] keys = new String[INITIAL_STACK];
+    private long[] remaining = new long[INITIAL_STACK];
+    private int depth;
+
+    protected BinaryJsonReader(byte[] data, JsonReader.Limits limits) {
+        if (data.length > limits.getMaxSize()) {
+            throw new JsonLimitException("Documento de " + data.length +
+                    " bytes supera el máximo de " + limits.getMaxSize());
+        }
+        this.data = data;
+        this.limits = limits;
+    }
+
+    public static BinaryJsonReader create(Format format, byte[] data, JsonReader.Limits limits) {
+        return format == Format.SMILE ? new Smile(data, limits) : new Cbor(data, limits);
+    }
+
+    public static Object read(Format format, byte[] data, JsonReader.Limits limits) {
+        return create(format, data, limits).parse();
+    }
+
+    public void setSymbolTable(KeySymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    public int getPosition() {
+        return pos;
+    }
+
+    // Leer el primer valor del documento
+    @SuppressWarnings("unchecked")
+    public Object parse() {
+        readHeader();
+        Object value;
+
+        // Inicio de un valor
+        while (true) {
+            value = readValue();
+            if (value == OPENED) {
+                if (!endOfContainer()) {
+                    nextKey();
+                    continue;
+                }
+                value = pop(); // Contenedor vacío
+            }
+
+            // Valor completo: colgarlo del contenedor abierto y cerrar los que terminen
+            while (true) {
+                if (depth == 0) {
+                    return value;
+                }
+                Object top = containers[depth - 1];
+                if (top instanceof Map) {
+                    ((Map<String, Object>) top).put(keys[depth - 1], value);
+                } else {
+                    ((List<Object>) top).add(value);
+                }
+                if (remaining[depth - 1] > 0) {
+                    remaining[depth - 1]--;
+                }
+                if (!endOfContainer()) {
+                    nextKey();
+                    break;
+                }
+                value = pop();
+            }
+        }
+    }
+
+    // Cabecera del formato, si tiene
+    protected void readHeader() {
+    }
+
+    // Valor escalar, o OPENED tras abrir un contenedor con openMap/openList
+    protected abstract Object readValue();
+
+    // Clave del siguiente par del objeto en la cima, ya internada con symbol()
+    protected abstract String readKey();
+
+    // ¿Sigue la marca de fin del contenedor en la cima? Si sigue, se consume
+    protected abstract boolean atEndMarker(boolean map);
+
+    protected final Object openMap(long count) {
+        push(new LinkedHashMap<String, Object>(), count);
+        return OPENED;
+    }
+
+    protected final Object openList(long count) {
+        push(new ArrayList<>(count > 0 ? (int) Math.min(count, 1024) : 10), count);
+        return OPENED;
+    }
+
+    private boolean endOfContainer() {
+        long left = remaining[depth - 1];
+        return left >= 0 ? left == 0 : atEndMarker(containers[depth - 1] instanceof Map);
+    }
+
+    private void nextKey() {
+        if (containers[depth - 1] instanceof Map) {
+            keys[depth - 1] = readKey();
+        }
+    }
+
+    private void push(Object container, long count) {
+        if (depth >= limits.getMaxDepth()) {
+            throw new JsonLimitException("Profundidad de anidación supera el máximo de " +
+                    limits.getMaxDepth() + " en la posición " + pos);
+        }
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+            remaining = Arrays.copyOf(remaining, depth * 2);
+        }
+        containers[depth] = container;
+        keys[depth] = null;
+        remaining[depth] = count;
+        depth++;
+    }
+
+    private Object pop() {
+        depth--;
+        Object container = containers[depth];
+        containers[depth] = null;
+        keys[depth] = null;
+        return container instanceof List<?> list ? primitives(list) : container;
+    }
+
+    // Como JsonReader: un array no vacío de solo enteros, solo decimales o solo booleanos se
+    // guarda en una PrimitiveList
+    private static Object primitives(List<?> list) {
+        if (list.isEmpty()) {
+            return list;
+        }
+        Object first = list.get(0);
+        if (first instanceof Long) {
+            PrimitiveList.Longs longs = new PrimitiveList.Longs();
+            for (Object item : list) {
+                if (!(item instanceof Long value)) return list;
+                longs.addLong(value);
+            }
+            longs.trimToSize();
+            return longs;
+        } else if (first instanceof Double) {
+            PrimitiveList.Doubles doubles = new PrimitiveList.Doubles();
+            for (Object item : list) {
+                if (!(item instanceof Double value)) return list;
+                doubles.addDouble(value);
+            }
+            doubles.trimToSize();
+            return doubles;
+        } else if (first instanceof Boolean) {
+            PrimitiveList.Booleans booleans = new PrimitiveList.Booleans();
+            for (Object item : list) {
+                if (!(item instanceof Boolean value)) return list;
+                booleans.addBoolean(value);
+            }
+            booleans.trimToSize();
+            return booleans;
+        }
+        return list;
+    }
+
+    // ========== CONVERSIÓN DE VALORES ==========
+
+    // Número a partir de su texto, con las mismas reglas que JsonReader.parseNumber
+    protected static Object number(String text) {
+        try {
+            if (text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0) {
+                return Double.parseDouble(text);
+            }
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return text;
+        }
+    }
+
+    protected static Object integer(BigInteger value) {
+        return value.bitLength() < 64 ? (Object) value.longValue() : value.toString();
+    }
+
+    protected static Object decimal(BigDecimal value) {
+        return number(value.toString());
+    }
+
+    // Los codificadores reducen un double a 16 o 32 bits solo si no cambia su valor: se amplía
+    // sin pérdida, no a partir del texto más corto del float
+    protected static Double single(float value) {
+        return (double) value;
+    }
+
+    // Los datos binarios no existen en JSON: se representan en base64, como los conversores a texto
+    protected static String binary(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    // ========== LECTURA DE BYTES ==========
+
+    protected final int u8() {
+        if (pos >= data.length) {
+            throw malformed("fin inesperado de la entrada");
+        }
+        return data[pos++] & 0xFF;
+    }
+
+    protected final int peek() {
+        return pos < data.length ? data[pos] & 0xFF : -1;
+    }
+
+    protected final void require(long length) {
+        if (length < 0 || length > data.length - pos) {
+            throw malformed("longitud " + length + " fuera de la entrada");
+        }
+    }
+
+    protected final String text(int length, boolean ascii) {
+        require(length);
+        if (length > limits.getMaxStringLength()) {
+            throw new JsonLimitException("Cadena en la posición " + pos +
+                    " supera el máximo de " + limits.getMaxStringLength() + " caracteres");
+        }
+        String value = new String(data, pos, length, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        pos += length;
+        return value;
+    }
+
+    // Clave de 'length' bytes UTF-8 resuelta en la tabla de símbolos; las ASCII sin crear texto
+    protected final String symbol(int length) {
+        require(length);
+        String key = symbols.lookup(data, pos, pos + length);
+        if (key == null) {
+            key = symbols.intern(new String(data, pos, length, StandardCharsets.UTF_8));
+        }
+        pos += length;
+        return key;
+    }
+
+    protected final String symbol(String key) {
+        return symbols.intern(key);
+    }
+
+    protected final IllegalArgumentException malformed(String detail) {
+        return new IllegalArgumentException(getClass().getSimpleName() + " mal formado en la posición " +
+                pos + ": " + detail);
+    }
+
+    // ========== CBOR (RFC 8949) ==========
+    public static final class Cbor extends BinaryJsonReader {
+
+        private static final int BREAK = 0xFF;
+        private static final int INDEFINITE = 31;
+
+        public Cbor(byte[] data, JsonReader.Limits limits) {
+            super(data, limits);
+        }
+
+        @Override
+        protected Object readValue() {
+            int initial = u8();
+            int major = initial >>> 5;
+            int info = initial & 0x1F;
+
+            switch (major) {
+                case 0: {
+                    long n = argument(info);
+                    return n >= 0 ? (Object) n : Long.toUnsignedString(n);
+                }
+                case 1: {
+                    long n = argument(info);
+                    return n >= 0 ? (Object) (-1 - n)
+                            : BigInteger.ONE.negate().subtract(new BigInteger(Long.toUnsignedString(n))).toString();
+                }
+                case 2:
+                    return binary(bytes(info));
+                case 3:
+                    return string(info);
+                case 4:
+                    return openList(info == INDEFINITE ? -1 : count(info));
+                case 5:
+                    return openMap(info == INDEFINITE ? -1 : count(info));
+                case 6:
+                    return tagged(argument(info));
+                default:
+                    return simple(info);
+            }
+        }
+
+        @Override
+        protected String readKey() {
+            int initial = peek();
+            if (initial >>> 5 == 3 && (initial & 0x1F) != INDEFINITE) {
+                pos++;
+                return symbol(length(initial & 0x1F));
+            }
+            // Claves en trozos o no textuales (números, booleanos): su texto
+            Object key = readValue();
+            if (key == OPENED) {
+                throw malformed("clave de objeto que no es un escalar");
+            }
+            return symbol(String.valueOf(key));
+        }
+
+        @Override
+        protected boolean atEndMarker(boolean map) {
+            if (peek() == BREAK) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private Object tagged(long tag) {
+            if (tag == 2 || tag == 3) {
+                // Bignum: cadena de bytes con el valor absoluto
+                int initial = u8();
+                if (initial >>> 5 != 2) {
+                    throw malformed("bignum sin cadena de bytes");
+                }
+                BigInteger n = new BigInteger(1, bytes(initial & 0x1F));
+                return integer(tag == 2 ? n : BigInteger.ONE.negate().subtract(n));
+            }
+            if (tag == 4 && peek() == 0x82) {
+                // Fracción decimal [exponente, mantisa]
+                pos++;
+                Object exponent = readValue();
+                Object mantissa = readValue();
+                if (!(exponent instanceof Long scale) || mantissa == OPENED) {
+                    throw malformed("fracción decimal no válida");
+                }
+                return decimal(new BigDecimal(new BigInteger(String.valueOf(mantissa)), Math.toIntExact(-scale)));
+            }
+            // Resto de etiquetas (fechas, URIs...): el valor sin la etiqueta
+            return readValue();
+        }
+
+        private Object simple(int info) {
+            switch (info) {
+                case 20: return Boolean.FALSE;
+                case 21: return Boolean.TRUE;
+                case 24: u8(); return null;
+                case 25: return single(Float.float16ToFloat((short) ((u8() << 8) | u8())));
+                case 26: return single(Float.intBitsToFloat((int) argument(26)));
+                case 27: return Double.longBitsToDouble(argument(27));
+                case INDEFINITE: throw malformed("marca de fin fuera de un contenedor");
+                default: return null; // null, undefined y valores simples sin equivalente
+            }
+        }
+
+        private long argument(int info) {
+            if (info < 24) {
+                return info;
+            }
+            int bytes;
+            switch (info) {
+                case 24: bytes = 1; break;
+                case 25: bytes = 2; break;
+                case 26: bytes = 4; break;
+                case 27: bytes = 8; break;
+                default: throw malformed("información adicional " + info + " no válida");
+            }
+            require(bytes);
+            long value = 0;
+            for (int i = 0; i < bytes; i++) {
+                value = (value << 8) | (data[pos++] & 0xFF);
+            }
+            return value;
+        }
+
+        private long count(int info) {
+            long count = argument(info);
+            if (count < 0 || count > data.length - pos) {
+                throw malformed("contenedor de " + Long.toUnsignedString(count) + " elementos");
+            }
+            return count;
+        }
+
+        private String string(int info) {
+            if (info != INDEFINITE) {
+                return text(length(info), false);
+            }
+            // Trozos de texto hasta la marca de fin
+            StringBuilder sb = new StringBuilder();
+            while (peek() != BREAK) {
+                int chunk = u8();
+                if (chunk >>> 5 != 3 || (chunk & 0x1F) == INDEFINITE) {
+                    throw malformed("trozo de texto no válido");
+                }
+                sb.append(text(length(chunk & 0x1F), false));
+            }
+            pos++;
+            return sb.toString();
+        }
+
+        private byte[] bytes(int info) {
+            if (info != INDEFINITE) {
+                int length = length(info);
+                byte[] bytes = Arrays.copyOfRange(data, pos, pos + length);
+                pos += length;
+                return bytes;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            while (peek() != BREAK) {
+                int chunk = u8();
+                if (chunk >>> 5 != 2 || (chunk & 0x1F) == INDEFINITE) {
+                    throw malformed("trozo de bytes no válido");
+                }
+                int length = length(chunk & 0x1F);
+                out.write(data, pos, length);
+                pos += length;
+            }
+            pos++;
+            return out.toByteArray();
+        }
+
+        private int length(int info) {
+            long length = argument(info);
+            require(length);
+            return (int) length;
+        }
+    }
+
+    // ========== SMILE ==========
+    // Formato de Jackson: cabecera ":)\n" más un byte de opciones, tokens de un byte con la
+    // longitud o el valor pequeño incluido y tablas de claves y cadenas ya vistas
+    public static final class Smile extends BinaryJsonReader {
+
+        private static final int SHARED_NAMES = 0x01;
+        private static final int SHARED_VALUES = 0x02;
+        private static final int MAX_SHARED = 1024;
+
+        private static final int END_OF_STRING = 0xFC;
+        private static final int START_ARRAY = 0xF8;
+        private static final int END_ARRAY = 0xF9;
+        private static final int START_OBJECT = 0xFA;
+        private static final int END_OBJECT = 0xFB;
+
+        // Claves y cadenas cortas ya vistas, para las referencias; null si están desactivadas
+        private String[] names = new String[64];
+        private int nameCount;
+        private String[] values;
+        private int valueCount;
+
+        public Smile(byte[] data, JsonReader.Limits limits) {
+            super(data, limits);
+        }
+
+        @Override
+        protected void readHeader() {
+            if (Format.detect(data) != Format.SMILE) {
+                return; // Sin cabecera: claves compartidas, valores no
+            }
+            pos = 3;
+            int options = u8();
+            if ((options & SHARED_NAMES) == 0) {
+                names = null;
+            }
+            if ((options & SHARED_VALUES) != 0) {
+                values = new String[64];
+            }
+        }
+
+        @Override
+        protected Object readValue() {
+            int token = u8();
+            switch (token >>> 5) {
+                case 0:
+                    // Referencia corta a una cadena ya vista (0x01-0x1F)
+                    if (token == 0) {
+                        throw malformed("token 0x00 no válido");
+                    }
+                    return sharedValue(token - 1);
+                case 1:
+                    return literal(token);
+                case 2:
+                    // Cadena ASCII de 1 a 64 bytes
+                    return seenValue(text((token & 0x1F) + 1, true));
+                case 3:
+                    return seenValue(text((token & 0x1F) + 33, true));
+                case 4:
+                    // Cadena Unicode de 2 a 65 bytes
+                    return seenValue(text((token & 0x1F) + 2, false));
+                case 5:
+                    return seenValue(text((token & 0x1F) + 34, false));
+                case 6: {
+                    // Entero pequeño en zigzag (-16..15)
+                    int n = token & 0x1F;
+                    return (long) ((n >>> 1) ^ -(n & 1));
+                }
+                default:
+                    return special(token);
+            }
+        }
+
+        private Object literal(int token) {
+            switch (token) {
+                case 0x20: return "";
+                case 0x21: return null;
+                case 0x22: return Boolean.FALSE;
+                case 0x23: return Boolean.TRUE;
+                case 0x24:
+                case 0x25: {
+                    long n = vlong();
+                    return (n >>> 1) ^ -(n & 1);
+                }
+                case 0x26: return integer(new BigInteger(sevenBitBinary()));
+                case 0x28: return single(Float.intBitsToFloat((int) fixedSevenBit(5)));
+                case 0x29: return Double.longBitsToDouble(fixedSevenBit(10));
+                case 0x2A: {
+                    long n = vlong();
+                    int scale = (int) ((n >>> 1) ^ -(n & 1));
+                    return decimal(new BigDecimal(new BigInteger(sevenBitBinary()), scale));
+                }
+                default: throw malformed(String.format("token 0x%02X no válido", token));
+            }
+        }
+
+        private Object special(int token) {
+            switch (token) {
+                case 0xE0: return longText(true);
+                case 0xE4: return longText(false);
+                case 0xE8: return binary(sevenBitBinary());
+                case 0xEC:
+                case 0xED:
+                case 0xEE:
+                case 0xEF: return sharedValue(((token & 0x03) << 8) | u8());
+                case START_ARRAY: return openList(-1);
+                case START_OBJECT: return openMap(-1);
+                case 0xFD: {
+                    int length = length();
+                    byte[] bytes = Arrays.copyOfRange(data, pos, pos + length);
+                    pos += length;
+                    return binary(bytes);
+                }
+                default: throw malformed(String.format("token 0x%02X no válido", token));
+            }
+        }
+
+        @Override
+        protected String readKey() {
+            int token = u8();
+            if (token == 0x20) {
+                return symbol("");
+            }
+            if (token >= 0x30 && token <= 0x33) {
+                return sharedName(((token & 0x03) << 8) | u8());
+            }
+            if (token == 0x34) {
+                return seenName(symbol(longText(false)));
+            }
+            if (token >= 0x40 && token <= 0x7F) {
+                return sharedName(token & 0x3F);
+            }
+            if (token >= 0x80 && token <= 0xBF) {
+                return seenName(symbol((token & 0x3F) + 1));
+            }
+            if (token >= 0xC0 && token <= 0xF7) {
+                return seenName(symbol((token & 0x3F) + 2));
+            }
+            throw malformed(String.format("token de clave 0x%02X no válido", token));
+        }
+
+        @Override
+        protected boolean atEndMarker(boolean map) {
+            int next = peek();
+            if (next == (map ? END_OBJECT : END_ARRAY)) {
+                pos++;
+                return true;
+            }
+            if (next < 0) {
+                throw malformed("contenedor sin cerrar");
+            }
+            return false;
+        }
+
+        private String seenName(String name) {
+            if (names != null) {
+                if (nameCount == names.length) {
+                    names = nameCount == MAX_SHARED ? new String[MAX_SHARED] : Arrays.copyOf(names, nameCount * 2);
+                    nameCount %= MAX_SHARED;
+                }
+                names[nameCount++] = name;
+            }
+            return name;
+        }
+
+        private String sharedName(int index) {
+            if (names == null || index >= nameCount) {
+                throw malformed("referencia a la clave " + index + " no vista");
+            }
+            return names[index];
+        }
+
+        private String seenValue(String value) {
+            if (values != null) {
+                if (valueCount == values.length) {
+                    values = valueCount == MAX_SHARED ? new String[MAX_SHARED] : Arrays.copyOf(values, valueCount * 2);
+                    valueCount %= MAX_SHARED;
+                }
+                values[valueCount++] = value;
+            }
+            return value;
+        }
+
+        private String sharedValue(int index) {
+            if (values == null || index >= valueCount) {
+                throw malformed("referencia a la cadena " + index + " no vista");
+            }
+            return values[index];
+        }
+
+        // Texto hasta la marca de fin de cadena
+        private String longText(boolean ascii) {
+            int end = pos;
+            while (end < data.length && (data[end] & 0xFF) != END_OF_STRING) {
+                end++;
+            }
+            if (end == data.length) {
+                throw malformed("cadena sin terminar");
+            }
+            String value = text(end - pos, ascii);
+            pos++;
+            return value;
+        }
+
+        // Entero sin signo de longitud variable: 7 bits por byte y 6 en el último, que lleva
+        // el bit alto a 1
+        private long vlong() {
+            long value = 0;
+            for (int i = 0; i < 10; i++) {
+                int b = u8();
+                if ((b & 0x80) != 0) {
+                    return (value << 6) | (b & 0x3F);
+                }
+                value = (value << 7) | b;
+            }
+            throw malformed("entero variable demasiado largo");
+        }
+
+        private int length() {
+            long length = vlong();
+            require(length);
+            return (int) length;
+        }
+
+        // 'count' bytes de 7 bits, de más a menos significativo
+        private long fixedSevenBit(int count) {
+            require(count);
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                value = (value << 7) | (data[pos++] & 0x7F);
+            }
+            return value;
+        }
+
+        // Bytes codificados de 7 en 7 bits: cada 7 bytes ocupan 8; el resto, n bytes, ocupa
+        // n + 1 con los bits sobrantes alineados a la derecha en el último
+        private byte[] sevenBitBinary() {
+            long length = vlong();
+            if (length < 0 || length > data.length - pos) {
+                throw malformed("binario de " + length + " bytes");
+            }
+            byte[] result = new byte[(int) length];
+            int out = 0;
+            while (result.length - out >= 7) {
+                long group = fixedSevenBit(8);
+                for (int i = 6; i >= 0; i--) {
+                    result[out++] = (byte) (group >>> (8 * i));
+                }
+            }
+            int rest = result.length - out;
+            if (rest > 0) {
+                long group = fixedSevenBit(rest);
+                group = (group << rest) | (u8() & ((1 << rest) - 1));
+                for (int i = rest - 1; i >= 0; i--) {
+                    result[out++] = (byte) (group >>> (8 * i));
+                }
+            }
+            return result;
+        }
+    }
+}
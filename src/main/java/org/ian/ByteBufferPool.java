@@ -0,0 +1,69 @@
+package org.ian;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Pool de segmentos ByteBuffer directos (fuera del heap) de tamaño fijo, compartido entre hilos
+public class ByteBufferPool {
+
+    public static final ByteBufferPool DEFAULT = new ByteBufferPool(1 << 20, 64);
+
+    private final int segmentSize;
+    // Segmentos libres que se conservan; los que sobran se dejan al GC
+    private final int maxPooled;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    public ByteBufferPool(int segmentSize, int maxPooled) {
+        if (segmentSize < 16) {
+            throw new IllegalArgumentException("Segmento demasiado pequeño: " + segmentSize);
+        }
+        this.segmentSize = segmentSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer segment = free.poll();
+        if (segment != null) {
+            pooled.decrementAndGet();
+            reused.increment();
+            return segment;
+        }
+        allocated.increment();
+        return ByteBuffer.allocateDirect(segmentSize);
+    }
+
+    public void release(ByteBuffer segment) {
+        if (segment.capacity() != segmentSize || !segment.isDirect()) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            segment.clear();
+            free.offer(segment);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    // Segmentos creados desde el arranque (cada uno ocupa getSegmentSize() bytes fuera del heap)
+    public long getAllocated() {
+        return allocated.sum();
+    }
+
+    public long getReused() {
+        return reused.sum();
+    }
+
+    public int getPooled() {
+        return pooled.get();
+    }
+}
@@ -0,0 +1,23 @@
+package org.ian;
+
+import java.util.concurrent.CancellationException;
+
+// Señal de cancelación cooperativa compartida por todas las tareas de una conversión
+public final class CancellationToken {
+    private volatile boolean cancelled = false;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Lanzar CancellationException si se pidió cancelar (usar en fronteras de tarea/bloque)
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Conversión cancelada");
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package org.ian;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// Correspondencia inversa del perfil compacto: lee el XML de CompactXmlWriter (con el mismo
+// XmlProfile) al modelo de valores de JsonReader y puede escribirlo como JSON. Recorre el XML con
+// StAX y una pila explícita de elementos abiertos.
+//
+// Los tipos se deducen del texto: true/false, enteros y decimales en su forma canónica (la que
+// escribe el emisor) vuelven como Boolean, Long y Double, y el resto como String. Lo que el XML
+// no distingue se resuelve así:
+// - un objeto o array vacío vuelve como null, igual que el null (<clave/>, <item/>);
+// - dentro de un objeto los atributos (escalares) van antes que los elementos hijos;
+// - un elemento sin atributos cuyos hijos se llaman todos "item" o, con contenedores, como el
+//   singular de su nombre se lee como lista;
+// - sin contenedores, un array de un solo elemento vuelve como ese elemento.
+public class CompactXmlReader {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private final XmlProfile profile;
+    private final Pattern separator;
+    private final KeySymbolTable keys = new KeySymbolTable();
+
+    public CompactXmlReader(XmlProfile profile) {
+        if (!profile.isCompact()) {
+            throw new IllegalArgumentException("CompactXmlReader necesita un perfil compacto: " + profile);
+        }
+        this.profile = profile;
+        this.separator = Pattern.compile(Pattern.quote(profile.getListSeparator()));
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // Sin DTD ni entidades externas: solo se lee lo que escribe CompactXmlWriter
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    // Elemento hoja (sin atributos ni hijos): su valor depende de si es hijo de un objeto (lista
+    // delimitada) o elemento de una lista (escalar), que se sabe al cerrar el padre. 'text' es
+    // null si no tenía texto y "" si solo tenía una sección CDATA vacía
+    private static final class Leaf {
+        final String text;
+
+        Leaf(String text) {
+            this.text = text;
+        }
+    }
+
+    // Elemento abierto en la pila
+    private static final class Frame {
+        final String name;
+        final String[] attributes;
+        final List<String> childNames = new ArrayList<>();
+        final List<Object> childValues = new ArrayList<>();
+        StringBuilder text;
+
+        Frame(String name, String[] attributes) {
+            this.name = name;
+            this.attributes = attributes;
+        }
+    }
+
+    public Object read(String xml) {
+        return read(new StringReader(xml));
+    }
+
+    public Object read(Reader input) {
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(input);
+            ArrayDeque<Frame> stack = new ArrayDeque<>();
+            Object root = null;
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        int count = reader.getAttributeCount();
+                        String[] attributes = new String[count * 2];
+                        for (int i = 0; i < count; i++) {
+                            attributes[2 * i] = keys.intern(reader.getAttributeLocalName(i));
+                            attributes[2 * i + 1] = reader.getAttributeValue(i);
+                        }
+                        stack.push(new Frame(keys.intern(reader.getLocalName()), attributes));
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                        Frame top = stack.peek();
+                        // El texto entre elementos hijos es solo formato
+                        if (top != null && top.childNames.isEmpty()) {
+                            if (top.text == null) {
+                                top.text = new StringBuilder();
+                            }
+                            top.text.append(reader.getText());
+                        }
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        Frame frame = stack.pop();
+                        Object value = resolve(frame);
+                        Frame parent = stack.peek();
+                        if (parent == null) {
+                            root = item(value);
+                        } else {
+                            parent.childNames.add(frame.name);
+                            parent.childValues.add(value);
+                            parent.text = null;
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+            return root;
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("XML mal formado: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
+            }
+        }
+    }
+
+    // Convertir el XML compacto a texto JSON
+    public String toJSON(String xml) {
+        StringBuilder sb = new StringBuilder(xml.length());
+        appendJson(sb, read(xml));
+        return sb.toString();
+    }
+
+    private Object resolve(Frame frame) {
+        if (frame.attributes.length == 0 && frame.childNames.isEmpty()) {
+            return new Leaf(frame.text == null ? null : frame.text.toString());
+        }
+        if (frame.attributes.length == 0 && isList(frame)) {
+            List<Object> list = new ArrayList<>(frame.childValues.size());
+            for (Object child : frame.childValues) {
+                list.add(item(child));
+            }
+            return list;
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < frame.attributes.length; i += 2) {
+            map.put(frame.attributes[i], scalar(frame.attributes[i + 1]));
+        }
+        // Un nombre repetido es un array escrito sin contenedor
+        Map<String, Integer> counts = new HashMap<>();
+        for (String name : frame.childNames) {
+            counts.merge(name, 1, Integer::sum);
+        }
+        for (int i = 0; i < frame.childNames.size(); i++) {
+            String name = frame.childNames.get(i);
+            Object child = frame.childValues.get(i);
+            if (counts.get(name) == 1) {
+                map.put(name, member(child));
+            } else {
+                @SuppressWarnings("unchecked")
+                List<Object> repeated = (List<Object>) map.computeIfAbsent(name, k -> new ArrayList<>());
+                repeated.add(item(child));
+            }
+        }
+        return map;
+    }
+
+    private boolean isList(Frame frame) {
+        String singular = profile.isItemWrappers() ? CompactXmlWriter.itemName(frame.name) : null;
+        for (String name : frame.childNames) {
+            if (!name.equals("item") && !name.equals(singular)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Valor como hijo de un objeto: una hoja es una lista delimitada
+    private Object member(Object value) {
+        if (!(value instanceof Leaf leaf)) {
+            return value;
+        }
+        if (leaf.text == null || leaf.text.isEmpty()) {
+            return null;
+        }
+        String[] parts = separator.split(leaf.text, -1);
+        List<Object> list = new ArrayList<>(parts.length);
+        for (String part : parts) {
+            list.add(scalar(part));
+        }
+        return list;
+    }
+
+    // Valor como elemento de una lista: una hoja es un escalar
+    private static Object item(Object value) {
+        if (!(value instanceof Leaf leaf)) {
+            return value;
+        }
+        return leaf.text == null ? null : scalar(leaf.text);
+    }
+
+    // Tipo deducido del texto; solo la forma canónica de un número vuelve como número
+    static Object scalar(String text) {
+        if (text.isEmpty()) {
+            return text;
+        }
+        if (text.equals("true")) {
+            return Boolean.TRUE;
+        }
+        if (text.equals("false")) {
+            return Boolean.FALSE;
+        }
+        char first = text.charAt(0);
+        if (first != '-' && (first < '0' || first > '9')) {
+            return text;
+        }
+        boolean integer = true;
+        for (int i = first == '-' ? 1 : 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                integer = false;
+                break;
+            }
+        }
+        try {
+            if (integer) {
+                long value = Long.parseLong(text);
+                return Long.toString(value).equals(text) ? (Object) value : text;
+            }
+            double value = Double.parseDouble(text);
+            return String.valueOf(value).equals(text) ? (Object) value : text;
+        } catch (NumberFormatException e) {
+            // Enteros fuera de long: se quedan como texto, igual que en JsonReader
+            return text;
+        }
+    }
+
+    // ========== SALIDA JSON ==========
+
+    // Escribir un valor del modelo como JSON compacto, con pila explícita
+    @SuppressWarnings("unchecked")
+    public static void appendJson(StringBuilder sb, Object value) {
+        // Por contenedor abierto: iterador, si es un objeto y si aún no se escribió ningún hijo
+        ArrayDeque<Iterator<?>> iterators = new ArrayDeque<>();
+        BitSet objects = new BitSet();
+        BitSet empty = new BitSet();
+        Object current = value;
+
+        while (true) {
+            int depth = iterators.size();
+            if (current instanceof Map) {
+                sb.append('{');
+                iterators.push(((Map<String, Object>) current).entrySet().iterator());
+                objects.set(depth);
+                empty.set(depth);
+            } else if (current instanceof List) {
+                sb.append('[');
+                iterators.push(((List<Object>) current).iterator());
+                objects.clear(depth);
+                empty.set(depth);
+            } else {
+                appendJsonScalar(sb, current);
+            }
+
+            // Siguiente valor: cerrar los contenedores que se agotan
+            while (true) {
+                Iterator<?> iterator = iterators.peek();
+                if (iterator == null) {
+                    return;
+                }
+                int top = iterators.size() - 1;
+                if (!iterator.hasNext()) {
+                    iterators.pop();
+                    sb.append(objects.get(top) ? '}' : ']');
+                    continue;
+                }
+                if (!empty.get(top)) {
+                    sb.append(',');
+                }
+                empty.clear(top);
+                if (objects.get(top)) {
+                    Map.Entry<String, Object> entry = (Map.Entry<String, Object>) iterator.next();
+                    appendJsonString(sb, entry.getKey());
+                    sb.append(':');
+                    current = entry.getValue();
+                } else {
+                    current = iterator.next();
+                }
+                break;
+            }
+        }
+    }
+
+    private static void appendJsonScalar(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof String text) {
+            appendJsonString(sb, text);
+        } else if (value instanceof Double d && (d.isNaN() || d.isInfinite())) {
+            sb.append("null");
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private static void appendJsonString(StringBuilder sb, String text) {
+        sb.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,419 @@
+package org.ian;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.*;
+
+// Emisor del perfil compacto (XmlProfile.compact): los escalares de un objeto van como
+// atributos de su elemento, un array de escalares como texto delimitado de un solo elemento y
+// sin indentación ni saltos de línea. Igual que XmlWriter recorre el árbol con una pila explícita.
+//
+//   {"empleados":[{"nombre":"Ana","edad":31,"notas":[7.5,8.25]}]}
+//   <root><empleados><empleado nombre="Ana" edad="31"><notas>7.5 8.25</notas></empleado></empleados></root>
+//
+// Un null hijo de un objeto se escribe como elemento vacío (<clave/>). Dentro de una lista los
+// escalares son elementos con texto (<item>5</item>, null es <item/>) y
+// una lista anidada se escribe elemento a elemento, para que CompactXmlReader distinga un escalar
+// de una lista de un solo valor.
+public class CompactXmlWriter {
+
+    private static final int INITIAL_STACK = 32;
+
+    private final StringBuilder out;
+    private final Writer sink;
+    private final int flushThreshold;
+    private final XmlProfile profile;
+    private final String separator;
+    private char[] flushBuffer;
+    private CancellationToken cancellation;
+    private long valuesWritten;
+
+    // Pila explícita: iterador del contenedor, nombre de sus elementos (null en objetos, cuyos
+    // hijos escalares ya se escribieron como atributos) y cierre pendiente al vaciarlo
+    private Iterator<?>[] iterators = new Iterator<?>[INITIAL_STACK];
+    private String[] itemNames = new String[INITIAL_STACK];
+    private String[] closeTags = new String[INITIAL_STACK];
+    private int depth;
+
+    // Nombres de atributo ya escritos en el elemento que abre openMap
+    private Set<String> attributeNames = new HashSet<>();
+
+    public CompactXmlWriter(StringBuilder out, XmlProfile profile) {
+        this(out, profile, null, Integer.MAX_VALUE);
+    }
+
+    // Emitir por bloques hacia un Writer, como XmlWriter
+    public CompactXmlWriter(StringBuilder out, XmlProfile profile, Writer sink, int flushThreshold) {
+        if (!profile.isCompact()) {
+            throw new IllegalArgumentException("CompactXmlWriter necesita un perfil compacto: " + profile);
+        }
+        this.out = out;
+        this.profile = profile;
+        this.separator = profile.getEscapedSeparator();
+        this.sink = sink;
+        this.flushThreshold = flushThreshold;
+    }
+
+    public void flush() throws IOException {
+        if (sink == null || out.length() == 0) {
+            return;
+        }
+        int length = out.length();
+        if (flushBuffer == null || flushBuffer.length < length) {
+            flushBuffer = new char[Math.max(length, 8192)];
+        }
+        out.getChars(0, length, flushBuffer, 0);
+        sink.write(flushBuffer, 0, length);
+        out.setLength(0);
+    }
+
+    public void setCancellationToken(CancellationToken cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    public long getValuesWritten() {
+        return valuesWritten;
+    }
+
+    // El documento completo dentro de <root>
+    public void writeRoot(Object value) {
+        writeItem("root", value);
+    }
+
+    // Hijo de un objeto que no es atributo (los escalares los escribe openMap)
+    public void writeMember(String tag, Object value) {
+        writeMemberStart(tag, value);
+        drain();
+    }
+
+    // Elemento de una lista
+    public void writeItem(String name, Object item) {
+        writeItemStart(name, item);
+        drain();
+    }
+
+    // Abrir <tag ...> con los escalares del objeto como atributos; devuelve false si no tiene
+    // hijos no escalares y el elemento ya quedó cerrado (<tag .../>)
+    public boolean openMap(String tag, Map<String, Object> map) {
+        out.append('<').append(tag);
+        boolean children = false;
+        resetAttributeNames();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (!isAttribute(value)) {
+                children = true;
+                continue;
+            }
+            valuesWritten++;
+            out.append(' ').append(attributeName(entry.getKey())).append("=\"");
+            appendAttribute(out, String.valueOf(value));
+            out.append('"');
+        }
+        out.append(children ? ">" : "/>");
+        return children;
+    }
+
+    // Si writeMember escribirá la lista como texto delimitado
+    public boolean writesDelimited(List<?> list) {
+        if (list.isEmpty()) {
+            return false;
+        }
+        if (list instanceof PrimitiveList) {
+            return true;
+        }
+        String rawSeparator = profile.getListSeparator();
+        for (Object item : list) {
+            // Un null, una cadena vacía o que contiene el separador no se podrían recuperar
+            if (item == null || !isScalar(item)) {
+                return false;
+            }
+            String text = String.valueOf(item);
+            if (text.isEmpty() || text.contains(rawSeparator)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isScalar(Object value) {
+        return !(value instanceof Map) && !(value instanceof List);
+    }
+
+    // Nombre de los elementos de un array con contenedor; una clave cuyo singular queda vacía
+    // ("s") usa "item"
+    static String itemName(String tag) {
+        String singular = XmlWriter.toSingular(tag);
+        return singular.isEmpty() ? "item" : singular;
+    }
+
+    // Valor que openMap escribe como atributo: un null va como elemento vacío (<clave/>) para
+    // no confundirse con una cadena vacía
+    public static boolean isAttribute(Object value) {
+        return value != null && isScalar(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeMemberStart(String tag, Object value) {
+        valuesWritten++;
+        if (value == null) {
+            out.append('<').append(tag).append("/>");
+            return;
+        }
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            if (openMap(tag, map)) {
+                push(map.entrySet().iterator(), null, tag);
+            }
+            return;
+        }
+        List<Object> list = (List<Object>) value;
+        if (writesDelimited(list)) {
+            out.append('<').append(tag).append('>');
+            appendDelimited(list);
+            out.append("</").append(tag).append('>');
+        } else if (list.isEmpty()) {
+            out.append('<').append(tag).append("/>");
+        } else if (profile.isItemWrappers()) {
+            out.append('<').append(tag).append('>');
+            push(list.iterator(), itemName(tag), tag);
+        } else {
+            // Sin contenedor: un elemento con el nombre de la clave por cada valor
+            push(list.iterator(), tag, null);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeItemStart(String name, Object item) {
+        valuesWritten++;
+        if (item == null) {
+            out.append('<').append(name).append("/>");
+        } else if (item instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) item;
+            if (openMap(name, map)) {
+                push(map.entrySet().iterator(), null, name);
+            }
+        } else if (item instanceof List) {
+            List<Object> list = (List<Object>) item;
+            if (list.isEmpty()) {
+                out.append('<').append(name).append("/>");
+                return;
+            }
+            out.append('<').append(name).append('>');
+            if (list instanceof PrimitiveList<?> primitives) {
+                writePrimitiveItems(primitives);
+                out.append("</").append(name).append('>');
+            } else {
+                push(list.iterator(), "item", name);
+            }
+        } else {
+            String text = String.valueOf(item);
+            out.append('<').append(name).append('>');
+            if (text.isEmpty()) {
+                // Sección CDATA vacía: el lector la distingue de <item/>, que es null
+                out.append("<![CDATA[]]>");
+            } else {
+                appendText(out, text);
+            }
+            out.append("</").append(name).append('>');
+        }
+    }
+
+    // Lista primitiva dentro de otra lista: <item>v</item> por elemento, por bloques
+    private void writePrimitiveItems(PrimitiveList<?> list) {
+        int size = list.size();
+        for (int from = 0; from < size; from += PrimitiveList.CHUNK) {
+            checkCancelled();
+            int to = Math.min(size, from + PrimitiveList.CHUNK);
+            for (int i = from; i < to; i++) {
+                out.append("<item>");
+                list.appendValue(out, i);
+                out.append("</item>");
+            }
+            flushIfFull();
+        }
+        valuesWritten += size;
+    }
+
+    private void appendDelimited(List<Object> list) {
+        if (list instanceof PrimitiveList<?> primitives) {
+            int size = primitives.size();
+            for (int from = 0; from < size; from += PrimitiveList.CHUNK) {
+                checkCancelled();
+                if (from > 0) {
+                    out.append(separator);
+                }
+                primitives.appendDelimited(out, from, Math.min(size, from + PrimitiveList.CHUNK), separator);
+                flushIfFull();
+            }
+            valuesWritten += size;
+            return;
+        }
+        boolean first = true;
+        for (Object item : list) {
+            if (!first) {
+                out.append(separator);
+            }
+            first = false;
+            appendText(out, String.valueOf(item));
+        }
+        valuesWritten += list.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        while (depth > 0) {
+            flushIfFull();
+
+            int top = depth - 1;
+            Iterator<?> iterator = iterators[top];
+            if (!iterator.hasNext()) {
+                String closeTag = closeTags[top];
+                pop();
+                if (closeTag != null) {
+                    out.append("</").append(closeTag).append('>');
+                }
+                continue;
+            }
+
+            checkCancelled();
+            String itemName = itemNames[top];
+            if (itemName != null) {
+                writeItemStart(itemName, iterator.next());
+                continue;
+            }
+
+            Map.Entry<String, Object> entry = (Map.Entry<String, Object>) iterator.next();
+            Object value = entry.getValue();
+            if (isAttribute(value)) {
+                continue; // Ya es un atributo
+            }
+            writeMemberStart(XmlWriter.sanitizeTagName(entry.getKey()), value);
+        }
+    }
+
+    private void push(Iterator<?> iterator, String itemName, String closeTag) {
+        if (depth == iterators.length) {
+            iterators = Arrays.copyOf(iterators, depth * 2);
+            itemNames = Arrays.copyOf(itemNames, depth * 2);
+            closeTags = Arrays.copyOf(closeTags, depth * 2);
+        }
+        iterators[depth] = iterator;
+        itemNames[depth] = itemName;
+        closeTags[depth] = closeTag;
+        depth++;
+    }
+
+    private void pop() {
+        depth--;
+        iterators[depth] = null;
+        itemNames[depth] = null;
+        closeTags[depth] = null;
+    }
+
+    private void checkCancelled() {
+        if (cancellation != null) {
+            cancellation.throwIfCancelled();
+        }
+    }
+
+    private void flushIfFull() {
+        if (out.length() >= flushThreshold) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Nombre de atributo saneado y único en el elemento: dos claves que se sanean igual, o un
+    // sufijo que coincide con otra clave, darían un atributo repetido (XML mal formado). Se
+    // sube el sufijo numérico hasta encontrar un nombre libre
+    private String attributeName(String key) {
+        String name = XmlWriter.sanitizeTagName(key);
+        if (attributeNames.add(name)) {
+            return name;
+        }
+        for (int n = 2; ; n++) {
+            String candidate = name + "_" + n;
+            if (attributeNames.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    // Vaciar el conjunto; tras un objeto muy ancho se reemplaza para que clear() no recorra
+    // su tabla en cada elemento siguiente
+    private void resetAttributeNames() {
+        if (attributeNames.size() > 256) {
+            attributeNames = new HashSet<>();
+        } else {
+            attributeNames.clear();
+        }
+    }
+
+    // ========== ESCAPES ==========
+
+    // Texto de un elemento: solo lo imprescindible, y \r como referencia para que el parser no
+    // lo normalice a \n
+    static void appendText(StringBuilder sb, String text) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '&' || c == '<' || c == '>' || c == '\r') break;
+            i++;
+        }
+        if (i == length) {
+            sb.append(text);
+            return;
+        }
+        sb.append(text, 0, i);
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '\r': sb.append("&#13;"); break;
+                default: sb.append(c);
+            }
+        }
+    }
+
+    // Valor de atributo entre comillas dobles: los espacios en blanco distintos del espacio van
+    // como referencias porque el parser normaliza los literales a espacios
+    static void appendAttribute(StringBuilder sb, String text) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '&' || c == '<' || c == '"' || c == '\n' || c == '\r' || c == '\t') break;
+            i++;
+        }
+        if (i == length) {
+            sb.append(text);
+            return;
+        }
+        sb.append(text, 0, i);
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '"': sb.append("&quot;"); break;
+                case '\n': sb.append("&#10;"); break;
+                case '\r': sb.append("&#13;"); break;
+                case '\t': sb.append("&#9;"); break;
+                default: sb.append(c);
+            }
+        }
+    }
+
+    static String escapeText(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        appendText(sb, text);
+        return sb.toString();
+    }
+}
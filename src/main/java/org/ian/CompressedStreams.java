@@ -0,0 +1,57 @@
+package org.ian;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Entrada/salida comprimida para los puntos de entrada por streams de los conversores
+public final class CompressedStreams {
+
+    public enum Compression {
+        NONE,
+        GZIP,
+        // Bloques gzip comprimidos en paralelo en el ForkJoinPool del conversor
+        PARALLEL_GZIP
+    }
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private CompressedStreams() {
+    }
+
+    // Detectar gzip por su número mágico y descomprimir al vuelo; otro contenido pasa tal cual
+    public static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(4);
+        int b0 = buffered.read();
+        int b1 = buffered.read();
+        int b2 = buffered.read();
+        int b3 = buffered.read();
+        buffered.reset();
+
+        if (b0 == 0x1f && b1 == 0x8b) {
+            return new GZIPInputStream(buffered, BUFFER_SIZE);
+        }
+        if (b0 == 0x28 && b1 == 0xb5 && b2 == 0x2f && b3 == 0xfd) {
+            throw new IOException("Entrada Zstandard no soportada: descomprímala antes o use gzip");
+        }
+        return buffered;
+    }
+
+    public static OutputStream compress(OutputStream out, Compression compression, ForkJoinPool pool)
+            throws IOException {
+        switch (compression) {
+            case GZIP:
+                return new GZIPOutputStream(out, BUFFER_SIZE);
+            case PARALLEL_GZIP:
+                return new ParallelGzipOutputStream(out, pool);
+            default:
+                return new BufferedOutputStream(out, BUFFER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.ian;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Eventos de Java Flight Recorder propios del conversor. Todos están deshabilitados por
+// defecto (@Enabled(false)): sin una grabación que los active, shouldCommit() es falso y
+// los puntos de instrumentación se reducen a una comprobación sin asignaciones.
+public final class ConversionEvents {
+
+    // Solo se instrumenta 1 de cada TASK_SAMPLE_RATE tareas
+    private static final int TASK_SAMPLE_RATE = 64;
+    // Tareas en cola por encima de las que el hilo actual considera el pool saturado
+    private static final int SATURATION_SURPLUS = 16;
+
+    private ConversionEvents() {
+    }
+
+    @Name("org.ian.Conversion")
+    @Label("Conversión JSON a XML")
+    @Category("XML-JSON")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class ConversionEvent extends Event {
+        @Label("Modo")
+        String mode;
+
+        @Label("Entrada")
+        @Description("Caracteres del documento JSON")
+        @DataAmount
+        long inputBytes;
+
+        @Label("Salida")
+        @Description("Caracteres del XML generado")
+        @DataAmount
+        long outputBytes;
+
+        @Label("Completada")
+        boolean success;
+    }
+
+    @Name("org.ian.TaskCompute")
+    @Label("Tarea ForkJoin")
+    @Description("Ejecución muestreada de JsonParseTask/XmlConversionTask")
+    @Category({"XML-JSON", "ForkJoin"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class TaskComputeEvent extends Event {
+        @Label("Tipo")
+        String taskType;
+
+        @Label("Profundidad")
+        int depth;
+
+        @Label("Tamaño del subárbol")
+        @Description("Hijos directos del valor (conversión) o caracteres a parsear (parseo)")
+        long subtreeSize;
+    }
+
+    @Name("org.ian.TaskFork")
+    @Label("Fork de tarea")
+    @Category({"XML-JSON", "ForkJoin"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class TaskForkEvent extends Event {
+        @Label("Tipo")
+        String taskType;
+
+        @Label("Profundidad")
+        int depth;
+
+        @Label("Subtareas")
+        int forkedTasks;
+    }
+
+    @Name("org.ian.PoolSaturation")
+    @Label("Pool saturado")
+    @Description("Se encolan más tareas de las que los hilos del pool pueden robar")
+    @Category({"XML-JSON", "ForkJoin"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class PoolSaturationEvent extends Event {
+        @Label("Paralelismo")
+        int parallelism;
+
+        @Label("Hilos activos")
+        int activeThreads;
+
+        @Label("Tareas en cola")
+        long queuedTasks;
+
+        @Label("Envíos en cola")
+        long queuedSubmissions;
+
+        @Label("Excedente local")
+        int surplusQueuedTasks;
+    }
+
+    @Name("org.ian.CacheAccess")
+    @Label("Acceso a caché")
+    @Category("XML-JSON")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class CacheAccessEvent extends Event {
+        @Label("Caché")
+        String cache;
+
+        @Label("Acierto")
+        boolean hit;
+    }
+
+    // ========== PUNTOS DE INSTRUMENTACIÓN ==========
+
+    public static ConversionEvent beginConversion() {
+        ConversionEvent event = new ConversionEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void endConversion(ConversionEvent event, String mode, long inputBytes,
+                                     long outputBytes, boolean success) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.mode = mode;
+            event.inputBytes = inputBytes;
+            event.outputBytes = outputBytes;
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    // Devuelve null si la tarea no entra en la muestra o el evento no está habilitado
+    public static TaskComputeEvent beginTask() {
+        return beginTask(true);
+    }
+
+    public static TaskComputeEvent beginTask(boolean sampled) {
+        if (sampled && ThreadLocalRandom.current().nextInt(TASK_SAMPLE_RATE) != 0) {
+            return null;
+        }
+        TaskComputeEvent event = new TaskComputeEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    public static void endTask(TaskComputeEvent event, String taskType, int depth, long subtreeSize) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.taskType = taskType;
+            event.depth = depth;
+            event.subtreeSize = subtreeSize;
+            event.commit();
+        }
+    }
+
+    // Registrar un lote de forks (muestreado) y comprobar si el pool está saturado
+    public static void forked(String taskType, int depth, int forkedTasks) {
+        if (ThreadLocalRandom.current().nextInt(TASK_SAMPLE_RATE) != 0) {
+            return;
+        }
+
+        TaskForkEvent fork = new TaskForkEvent();
+        if (fork.shouldCommit()) {
+            fork.taskType = taskType;
+            fork.depth = depth;
+            fork.forkedTasks = forkedTasks;
+            fork.commit();
+        }
+
+        PoolSaturationEvent saturation = new PoolSaturationEvent();
+        if (saturation.shouldCommit()) {
+            int surplus = ForkJoinTask.getSurplusQueuedTaskCount();
+            ForkJoinPool pool = ForkJoinTask.getPool();
+            if (surplus > SATURATION_SURPLUS && pool != null) {
+                saturation.parallelism = pool.getParallelism();
+                saturation.activeThreads = pool.getActiveThreadCount();
+                saturation.queuedTasks = pool.getQueuedTaskCount();
+                saturation.queuedSubmissions = pool.getQueuedSubmissionCount();
+                saturation.surplusQueuedTasks = surplus;
+                saturation.commit();
+            }
+        }
+    }
+
+    public static void cacheAccess(String cache, boolean hit) {
+        CacheAccessEvent event = new CacheAccessEvent();
+        if (event.shouldCommit()) {
+            event.cache = cache;
+            event.hit = hit;
+            event.commit();
+        }
+    }
+}
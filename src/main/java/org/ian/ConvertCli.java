@@ -0,0 +1,185 @@
+package org.ian;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+// Conversión sin interfaz para llamarla archivo a archivo desde scripts. No toca Swing/AWT ni
+// org.json y solo crea el ForkJoinPool en los modos que lo usan, así que en un archivo pequeño
+// el arranque de la JVM y la carga de clases son casi todo el coste; con el archivo CDS que
+// genera el perfil 'appcds' del pom (ver README) esa carga sale de un archivo mapeado.
+//
+//   java -XX:SharedArchiveFile=target/xml-json-cli.jsa -cp target/XML-JSON-1.0-SNAPSHOT.jar \
+//       org.ian.ConvertCli entrada.json salida.xml
+public class ConvertCli {
+
+    public enum Mode {
+        // JsonStreamConverter: memoria constante, sin árbol ni pool
+        STREAM,
+        SECUENCIAL,
+        FORK_JOIN,
+        AUTO
+    }
+
+    // Documento de entrenamiento para --warmup: objetos, listas, arrays primitivos y escapes,
+    // para que el archivo CDS incluya las clases de todos los caminos de emisión
+    private static final String WARMUP_JSON = "{\"empleados\":[{\"nombre\":\"Ana\",\"edad\":31," +
+            "\"activo\":true,\"notas\":[7.5,8.25],\"extra\":null},{\"nombre\":\"<Luis & \\\"co\\\">\\u00e9\"," +
+            "\"edad\":45,\"activo\":false,\"notas\":[],\"extra\":{}}],\"ids\":[1,2,3,4294967296]," +
+            "\"flags\":[true,false],\"raiz\":[[1,\"a\"],{\"b\":2}]}";
+
+    private Mode mode = Mode.STREAM;
+    private CompressedStreams.Compression compression = CompressedStreams.Compression.NONE;
+    // null = JSON en texto
+    private BinaryJsonReader.Format inputFormat;
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public void setCompression(CompressedStreams.Compression compression) {
+        this.compression = compression;
+    }
+
+    // Entrada CBOR o Smile; null para JSON en texto
+    public void setInputFormat(BinaryJsonReader.Format inputFormat) {
+        this.inputFormat = inputFormat;
+    }
+
+    // Convertir 'in' (JSON, gzip detectado solo) y escribir el XML en 'out'
+    public void convert(InputStream in, OutputStream out) throws IOException {
+        if (inputFormat != null) {
+            convertBinary(CompressedStreams.decompress(in).readAllBytes(), out);
+            return;
+        }
+        if (mode == Mode.STREAM) {
+            JsonParser.convertStreaming(in, out, compression);
+            return;
+        }
+
+        String json = NioFiles.readText(CompressedStreams.decompress(in));
+        switch (mode) {
+            case SECUENCIAL -> {
+                try (Writer writer = writer(out)) {
+                    new JsonParser(json).writeXML(writer);
+                }
+            }
+            case FORK_JOIN -> {
+                JsonParserForkJoin forkJoin = new JsonParserForkJoin();
+                try (Writer writer = writer(out)) {
+                    forkJoin.writeXML(json, writer);
+                }
+            }
+            default -> {
+                AutoConverter auto = new AutoConverter();
+                try (Writer writer = writer(out)) {
+                    writer.write(auto.toXML(json));
+                }
+            }
+        }
+    }
+
+    // El árbol se construye siempre (no hay lector binario en streaming); solo FORK_JOIN lo
+    // convierte en el pool
+    private void convertBinary(byte[] data, OutputStream out) throws IOException {
+        try (Writer writer = writer(out)) {
+            if (mode == Mode.FORK_JOIN) {
+                writer.write(new JsonParserForkJoin().toXML(data, inputFormat));
+            } else {
+                new JsonParser(data, inputFormat, JsonReader.Limits.DEFAULT).writeXML(writer);
+            }
+        }
+    }
+
+    private Writer writer(OutputStream out) throws IOException {
+        // Sin pool salvo que se pida compresión en paralelo
+        return new OutputStreamWriter(CompressedStreams.compress(out, compression,
+                compression == CompressedStreams.Compression.PARALLEL_GZIP
+                        ? ForkJoinPool.commonPool() : null), StandardCharsets.UTF_8);
+    }
+
+    // Archivo a archivo; null es stdin o stdout
+    public void convert(Path input, Path output) throws IOException {
+        try (InputStream in = input != null ? Files.newInputStream(input) : new FileInputStream(FileDescriptor.in);
+             OutputStream out = output != null ? Files.newOutputStream(output)
+                     : new FileOutputStream(FileDescriptor.out)) {
+            convert(in, out);
+        }
+    }
+
+    // Convertir el documento de entrenamiento en todos los modos por el mismo camino de
+    // archivos que una ejecución normal, para que también se archiven las clases de E/S
+    static void warmup() throws IOException {
+        Path input = Files.createTempFile("xml-json-warmup", ".json");
+        Path output = Files.createTempFile("xml-json-warmup", ".xml");
+        try {
+            Files.writeString(input, WARMUP_JSON);
+            for (Mode mode : Mode.values()) {
+                ConvertCli cli = new ConvertCli();
+                cli.setMode(mode);
+                cli.convert(input, output);
+            }
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        ConvertCli cli = new ConvertCli();
+        Path input = null;
+        Path output = null;
+        boolean warmup = false;
+        int positional = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--mode" -> cli.setMode(Mode.valueOf(value(args, ++i).toUpperCase().replace('-', '_')));
+                    case "--compression" -> cli.setCompression(CompressedStreams.Compression.valueOf(
+                            value(args, ++i).toUpperCase().replace('-', '_')));
+                    case "--input-format" -> {
+                        String format = value(args, ++i).toUpperCase();
+                        cli.setInputFormat(format.equals("JSON") ? null : BinaryJsonReader.Format.valueOf(format));
+                    }
+                    case "--warmup" -> warmup = true;
+                    default -> {
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+                        }
+                        Path path = args[i].equals("-") ? null : Paths.get(args[i]);
+                        if (positional++ == 0) {
+                            input = path;
+                        } else {
+                            output = path;
+                        }
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Uso: ConvertCli [--mode stream|secuencial|fork-join|auto] " +
+                    "[--compression none|gzip|parallel-gzip] [--input-format json|cbor|smile] [--warmup] [entrada.json|- [salida.xml|-]]");
+            System.exit(2);
+            return;
+        }
+
+        if (warmup) {
+            warmup();
+            return;
+        }
+
+        cli.convert(input, output);
+        // Sin esperar a los hilos del pool, si se creó
+        System.exit(0);
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Falta el valor de " + args[i - 1]);
+        }
+        return args[i];
+    }
+}
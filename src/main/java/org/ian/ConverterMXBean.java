@@ -0,0 +1,44 @@
+package org.ian;
+
+import java.util.Map;
+
+// Vista JMX de un JsonParserForkJoin: contadores acumulados, estado del pool y ajustes en caliente
+public interface ConverterMXBean {
+
+    // Contadores acumulados desde el arranque
+    long getConversions();
+    long getFailures();
+    // Caracteres (no bytes) del JSON de entrada y del XML de salida
+    long getCharsIn();
+    long getCharsOut();
+    // Tareas ejecutadas (incluye las que corren en línea) y tareas repartidas con fork o envío al pool
+    long getTasksCreated();
+    long getTasksForked();
+    long getBytesAllocated();
+
+    // Estado actual del ForkJoinPool
+    long getStealCount();
+    long getQueuedTaskCount();
+    long getQueuedSubmissionCount();
+    int getActiveThreadCount();
+    int getPoolSize();
+    int getParallelism();
+
+    // Conversión en curso
+    boolean isExecuting();
+    double getProgress();
+
+    // Latencias por fase en microsegundos, con claves "fase.p50", "fase.p99", "fase.p999"
+    Map<String, Long> getPhaseLatenciesMicros();
+
+    int getMapForkThreshold();
+    int getListForkThreshold();
+
+    // Ajustes en caliente: JMX los expone como atributos escribibles
+    void setParallelism(int parallelism);
+    void setMapForkThreshold(int threshold);
+    void setListForkThreshold(int threshold);
+
+    // Operación: empezar un nuevo intervalo de medición de latencias
+    void resetPhaseLatencies();
+}
@@ -0,0 +1,93 @@
+package org.ian;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Registro de un JsonParserForkJoin como MXBean en el MBeanServer de la plataforma
+public class ConverterManagement implements ConverterMXBean {
+
+    public static final String DOMAIN = "org.ian";
+
+    private final JsonParserForkJoin converter;
+
+    public ConverterManagement(JsonParserForkJoin converter) {
+        this.converter = converter;
+    }
+
+    // Registrar bajo org.ian:type=Converter,name=<name>; reemplaza un registro previo con el mismo nombre
+    public static ObjectName register(JsonParserForkJoin converter, String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = objectName(name);
+        try {
+            server.registerMBean(new ConverterManagement(converter), objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            server.unregisterMBean(objectName);
+            server.registerMBean(new ConverterManagement(converter), objectName);
+        }
+        return objectName;
+    }
+
+    public static void unregister(String name) throws JMException {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+        } catch (InstanceNotFoundException e) {
+            // Ya no estaba registrado
+        }
+    }
+
+    public static ObjectName objectName(String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=Converter,name=" + ObjectName.quote(name));
+    }
+
+    private JsonParserForkJoin.ExecutionMonitor monitor() {
+        return converter.getMonitor();
+    }
+
+    @Override public long getConversions() { return monitor().getTotalConversions(); }
+    @Override public long getFailures() { return monitor().getTotalFailures(); }
+    @Override public long getCharsIn() { return monitor().getTotalInput(); }
+    @Override public long getCharsOut() { return monitor().getTotalOutput(); }
+    @Override public long getTasksCreated() { return monitor().getTotalTasks(); }
+    @Override public long getTasksForked() { return monitor().getTotalForked(); }
+    @Override public long getBytesAllocated() { return monitor().getTotalAllocated(); }
+
+    @Override public long getStealCount() { return converter.getPoolStats().getStealCount(); }
+    @Override public long getQueuedTaskCount() { return converter.getPoolStats().getQueuedTaskCount(); }
+    @Override public long getQueuedSubmissionCount() { return converter.getPoolStats().getQueuedSubmissionCount(); }
+    @Override public int getActiveThreadCount() { return converter.getPoolStats().getActiveThreadCount(); }
+    @Override public int getPoolSize() { return converter.getPoolStats().getPoolSize(); }
+    @Override public int getParallelism() { return converter.getPoolStats().getParallelism(); }
+
+    @Override public boolean isExecuting() { return monitor().isExecuting(); }
+    @Override public double getProgress() { return monitor().getProgress(); }
+
+    @Override
+    public Map<String, Long> getPhaseLatenciesMicros() {
+        PhaseHistograms phases = monitor().getPhaseHistograms();
+        Map<String, Long> latencies = new LinkedHashMap<>();
+        for (PhaseHistograms.Phase phase : PhaseHistograms.Phase.values()) {
+            LatencyHistogram histogram = phases.get(phase);
+            String prefix = phase.name().toLowerCase();
+            latencies.put(prefix + ".count", histogram.getCount());
+            latencies.put(prefix + ".p50", TimeUnit.NANOSECONDS.toMicros(histogram.getP50()));
+            latencies.put(prefix + ".p99", TimeUnit.NANOSECONDS.toMicros(histogram.getP99()));
+            latencies.put(prefix + ".p999", TimeUnit.NANOSECONDS.toMicros(histogram.getP999()));
+        }
+        return latencies;
+    }
+
+    @Override public int getMapForkThreshold() { return converter.getMapForkThreshold(); }
+    @Override public int getListForkThreshold() { return converter.getListForkThreshold(); }
+
+    @Override public void setParallelism(int parallelism) { converter.setParallelism(parallelism); }
+    @Override public void setMapForkThreshold(int threshold) { converter.setMapForkThreshold(threshold); }
+    @Override public void setListForkThreshold(int threshold) { converter.setListForkThreshold(threshold); }
+    @Override public void resetPhaseLatencies() { monitor().getPhaseHistograms().reset(); }
+}
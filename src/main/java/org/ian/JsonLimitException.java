@@ -0,0 +1,8 @@
+package org.ian;
+
+// Se lanza cuando un documento supera alguno de los JsonReader.Limits configurados
+public class JsonLimitException extends RuntimeException {
+    public JsonLimitException(String message) {
+        super(message);
+    }
+}
@@ -1,362 +1,268 @@
 package org.ian;
 
+import java.io.*;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class JsonParser {
+    // Cada cuántos caracteres de entrada se atiende la cancelación durante el parseo
+    private static final int CHECKPOINT_STEP = 4096;
+    // Tamaño de los bloques de XML que se entregan al Writer en writeXML
+    private static final int FLUSH_THRESHOLD = 256 * 1024;
+    private static final int MAX_PRESIZE = 64 * 1024 * 1024;
+
     private String json;
-    private int pos;
+    // Entrada CBOR/Smile en lugar de texto (json queda vacío)
+    private byte[] binary;
+    private BinaryJsonReader.Format format;
+    private final JsonReader.Limits limits;
+    private final CancellationToken cancellation = new CancellationToken();
+    private PhaseHistograms phases = new PhaseHistograms();
+    private ShapeRegistry shapes = ShapeRegistry.DEFAULT;
+    private Projection projection;
+    // Memoización de subárboles repetidos; null (por defecto) la desactiva
+    private SubtreeCache subtrees;
 
     public JsonParser(String json) {
-        this.json = json.trim();
-        this.pos = 0;
+        this(json, JsonReader.Limits.DEFAULT);
     }
 
-    public String toXML() {
-        StringBuilder result = new StringBuilder();
-        result.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        result.append("<root>\n");
-
-        Object parsed = parseValue();
-        result.append(valueToXML(parsed, 1));
-
-        result.append("</root>");
-        return result.toString();
+    public JsonParser(String json, JsonReader.Limits limits) {
+        this.json = json.trim();
+        this.limits = limits;
     }
 
-    // Parsear cualquier valor JSON
-    private Object parseValue() {
-        skipWhitespace();
-
-        if (pos >= json.length()) {
-            return null;
-        }
-
-        char c = json.charAt(pos);
-
-        if (c == '{') {
-            return parseObject();
-        } else if (c == '[') {
-            return parseArray();
-        } else if (c == '"') {
-            return parseString();
-        } else if (c == 't' || c == 'f') {
-            return parseBoolean();
-        } else if (c == 'n') {
-            return parseNull();
-        } else {
-            return parseNumber();
-        }
+    // Documento en JSON binario: se lee con BinaryJsonReader al mismo modelo de valores, así que
+    // el XML es el mismo que con el JSON equivalente
+    public JsonParser(byte[] binary, BinaryJsonReader.Format format, JsonReader.Limits limits) {
+        this.json = "";
+        this.binary = binary;
+        this.format = format;
+        this.limits = limits;
     }
 
-    // Parsear objeto JSON
-    private Map<String, Object> parseObject() {
-        Map<String, Object> map = new LinkedHashMap<>();
-        pos++; // Saltar '{'
-        skipWhitespace();
-
-        if (pos < json.length() && json.charAt(pos) == '}') {
-            pos++; // Objeto vacío
-            return map;
-        }
-
-        while (pos < json.length()) {
-            skipWhitespace();
-
-            // Leer clave
-            if (json.charAt(pos) != '"') {
-                break;
-            }
-            String key = parseString();
-
-            skipWhitespace();
-
-            // Verificar ':'
-            if (pos >= json.length() || json.charAt(pos) != ':') {
-                break;
-            }
-            pos++; // Saltar ':'
-
-            skipWhitespace();
-
-            // Leer valor (recursivo)
-            Object value = parseValue();
-            map.put(key, value);
-
-            skipWhitespace();
-
-            // Verificar si hay más propiedades
-            if (pos >= json.length()) {
-                break;
-            }
+    public String toXML() {
+        return toXML(XmlProfile.ELEMENTS);
+    }
 
-            char next = json.charAt(pos);
-            if (next == ',') {
-                pos++; // Saltar ','
-            } else if (next == '}') {
-                pos++; // Fin del objeto
-                break;
+    // Convertir con otro perfil de salida (por ejemplo XmlProfile.COMPACT) solo en esta llamada
+    public String toXML(XmlProfile profile) {
+        ConversionEvents.ConversionEvent event = ConversionEvents.beginConversion();
+        String xml = null;
+        SubtreeCache.Session session = openSubtrees(profile);
+        try {
+            xml = convert(profile, session);
+            return xml;
+        } finally {
+            if (session != null) {
+                session.close();
             }
+            ConversionEvents.endConversion(event, "secuencial", inputLength(),
+                    xml == null ? 0 : xml.length(), xml != null);
         }
-
-        return map;
     }
 
-    // Parsear array JSON
-    private List<Object> parseArray() {
-        List<Object> list = new ArrayList<>();
-        pos++; // Saltar '['
-        skipWhitespace();
+    private String convert(XmlProfile profile, SubtreeCache.Session session) {
+        long start = System.nanoTime();
+        Object parsed = parseValue(session);
+        phases.recordSince(PhaseHistograms.Phase.PARSE, start);
 
-        if (pos < json.length() && json.charAt(pos) == ']') {
-            pos++; // Array vacío
-            return list;
-        }
-
-        while (pos < json.length()) {
-            skipWhitespace();
-
-            // Leer elemento (recursivo)
-            Object value = parseValue();
-            list.add(value);
-
-            skipWhitespace();
-
-            if (pos >= json.length()) {
-                break;
-            }
+        start = System.nanoTime();
+        // El XML suele ocupar algo más que el JSON (el compacto, algo menos): reservar de entrada
+        // evita copias al crecer
+        long presize = profile.isCompact() ? inputLength() + 64L : inputLength() * 2L + 64;
+        StringBuilder result = new StringBuilder((int) Math.min(presize, MAX_PRESIZE));
+        result.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
 
-            char next = json.charAt(pos);
-            if (next == ',') {
-                pos++; // Saltar ','
-            } else if (next == ']') {
-                pos++; // Fin del array
-                break;
-            }
+        if (profile.isCompact()) {
+            CompactXmlWriter writer = new CompactXmlWriter(result, profile);
+            writer.setCancellationToken(cancellation);
+            writer.writeRoot(parsed);
+            phases.recordSince(PhaseHistograms.Phase.CONVERSION, start);
+            start = System.nanoTime();
+        } else {
+            result.append("<root>\n");
+
+            // Emisión iterativa: la profundidad del documento no consume pila de Java
+            XmlWriter writer = new XmlWriter(result);
+            writer.setCancellationToken(cancellation);
+            writer.setShapeRegistry(shapes);
+            writer.setSubtreeCache(session);
+            writer.writeValue(parsed, 1);
+            phases.recordSince(PhaseHistograms.Phase.CONVERSION, start);
+
+            start = System.nanoTime();
+            result.append("</root>");
         }
+        String xml = result.toString();
+        phases.recordSince(PhaseHistograms.Phase.ASSEMBLY, start);
+        return xml;
+    }
 
-        return list;
+    // Escribir el XML por bloques en un Writer en lugar de construir un único String
+    public void writeXML(Writer out) throws IOException {
+        writeXML(out, XmlProfile.ELEMENTS);
     }
 
-    // Parsear string
-    private String parseString() {
-        StringBuilder sb = new StringBuilder();
-        pos++; // Saltar '"' inicial
-
-        while (pos < json.length()) {
-            char c = json.charAt(pos);
-
-            if (c == '"') {
-                pos++; // Saltar '"' final
-                break;
-            } else if (c == '\\') {
-                pos++;
-                if (pos < json.length()) {
-                    char escaped = json.charAt(pos);
-                    switch (escaped) {
-                        case 'n':
-                            sb.append('\n');
-                            break;
-                        case 't':
-                            sb.append('\t');
-                            break;
-                        case 'r':
-                            sb.append('\r');
-                            break;
-                        case '\\':
-                            sb.append('\\');
-                            break;
-                        case '"':
-                            sb.append('"');
-                            break;
-                        default:
-                            sb.append(escaped);
-                    }
-                    pos++;
-                }
-            } else {
-                sb.append(c);
-                pos++;
+    public void writeXML(Writer out, XmlProfile profile) throws IOException {
+        SubtreeCache.Session session = openSubtrees(profile);
+        try {
+            writeXML(out, profile, session);
+        } finally {
+            if (session != null) {
+                session.close();
             }
         }
-
-        return sb.toString();
     }
 
-    // Parsear número
-    private Object parseNumber() {
-        int start = pos;
-
-        if (pos < json.length() && json.charAt(pos) == '-') {
-            pos++;
-        }
+    private void writeXML(Writer out, XmlProfile profile, SubtreeCache.Session session) throws IOException {
+        long start = System.nanoTime();
+        Object parsed = parseValue(session);
+        phases.recordSince(PhaseHistograms.Phase.PARSE, start);
 
-        while (pos < json.length() && Character.isDigit(json.charAt(pos))) {
-            pos++;
-        }
+        start = System.nanoTime();
+        StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + 4096);
+        buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
 
-        if (pos < json.length() && json.charAt(pos) == '.') {
-            pos++;
-            while (pos < json.length() && Character.isDigit(json.charAt(pos))) {
-                pos++;
+        if (profile.isCompact()) {
+            CompactXmlWriter writer = new CompactXmlWriter(buffer, profile, out, FLUSH_THRESHOLD);
+            writer.setCancellationToken(cancellation);
+            try {
+                writer.writeRoot(parsed);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
+            writer.flush();
+            out.flush();
+            phases.recordSince(PhaseHistograms.Phase.CONVERSION, start);
+            return;
         }
 
-        String numStr = json.substring(start, pos);
-
+        buffer.append("<root>\n");
+        XmlWriter writer = new XmlWriter(buffer, out, FLUSH_THRESHOLD);
+        writer.setCancellationToken(cancellation);
+        writer.setShapeRegistry(shapes);
+        writer.setSubtreeCache(session);
         try {
-            if (numStr.contains(".")) {
-                return Double.parseDouble(numStr);
-            } else {
-                return Long.parseLong(numStr);
-            }
-        } catch (NumberFormatException e) {
-            return numStr;
+            writer.writeValue(parsed, 1);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+
+        buffer.append("</root>");
+        writer.flush();
+        out.flush();
+        phases.recordSince(PhaseHistograms.Phase.CONVERSION, start);
     }
 
-    // Parsear boolean
-    private Boolean parseBoolean() {
-        if (json.startsWith("true", pos)) {
-            pos += 4;
-            return true;
-        } else if (json.startsWith("false", pos)) {
-            pos += 5;
-            return false;
+    // Escribir el XML en UTF-8 sobre un canal a través de segmentos directos del pool: la
+    // memoria de salida queda acotada a unos pocos segmentos sea cual sea el tamaño del XML
+    public void writeXML(GatheringByteChannel channel) throws IOException {
+        try (SegmentedWriter out = new SegmentedWriter(channel, ByteBufferPool.DEFAULT)) {
+            writeXML(out);
         }
-        return null;
     }
 
-    // Parsear null
-    private Object parseNull() {
-        if (json.startsWith("null", pos)) {
-            pos += 4;
-            return null;
+    // Punto de entrada por streams: la entrada puede venir en gzip (se detecta sola) y la
+    // salida se comprime según 'compression' mientras se genera
+    public static void convert(InputStream in, OutputStream out, CompressedStreams.Compression compression)
+            throws IOException {
+        String json = NioFiles.readText(CompressedStreams.decompress(in));
+        try (Writer writer = compressedWriter(out, compression)) {
+            new JsonParser(json).writeXML(writer);
         }
-        return null;
     }
 
-    // Saltar espacios en blanco
-    private void skipWhitespace() {
-        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
-            pos++;
+    // Como convert, pero sin cargar la entrada en un String: JsonStreamConverter la convierte
+    // mientras se lee. A diferencia del árbol, una clave repetida en un objeto se emite cada vez
+    public static void convertStreaming(InputStream in, OutputStream out, CompressedStreams.Compression compression)
+            throws IOException {
+        Reader reader = new InputStreamReader(CompressedStreams.decompress(in), StandardCharsets.UTF_8);
+        try (Writer writer = compressedWriter(out, compression)) {
+            new JsonStreamConverter(reader).convert(writer);
         }
     }
 
-    // Convertir valor a XML (recursivo con nivel de indentación)
-    private String valueToXML(Object value, int level) {
-        if (value == null) {
-            return "";
-        }
+    private static Writer compressedWriter(OutputStream out, CompressedStreams.Compression compression)
+            throws IOException {
+        return new OutputStreamWriter(
+                CompressedStreams.compress(out, compression,
+                        compression == CompressedStreams.Compression.PARALLEL_GZIP ? ForkJoinPool.commonPool() : null),
+                StandardCharsets.UTF_8);
+    }
 
-        if (value instanceof Map) {
-            return mapToXML((Map<String, Object>) value, level);
-        } else if (value instanceof List) {
-            return listToXML((List<Object>) value, level, "item");
-        } else {
-            return escapeXML(String.valueOf(value));
-        }
+    // Convertir solo las rutas seleccionadas (por ejemplo "$.empleados[*].nombre")
+    public void setProjection(Projection projection) {
+        this.projection = projection;
     }
 
-    // Convertir Map a XML (recursivo)
-    private String mapToXML(Map<String, Object> map, int level) {
-        StringBuilder xml = new StringBuilder();
-
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            String key = sanitizeTagName(entry.getKey());
-            Object value = entry.getValue();
-
-            xml.append(indent(level));
-            xml.append("<").append(key).append(">");
-
-            if (value instanceof Map) {
-                xml.append("\n");
-                xml.append(valueToXML(value, level + 1));
-                xml.append(indent(level));
-                xml.append("</").append(key).append(">\n");
-            } else if (value instanceof List) {
-                xml.append("\n");
-                xml.append(listToXML((List<Object>) value, level + 1, key));
-                xml.append(indent(level));
-                xml.append("</").append(key).append(">\n");
-            } else {
-                xml.append(valueToXML(value, level));
-                xml.append("</").append(key).append(">\n");
-            }
-        }
+    public Projection getProjection() {
+        return projection;
+    }
 
-        return xml.toString();
+    // Planes de forma usados al emitir; null desactiva el atajo para objetos planos
+    public void setShapeRegistry(ShapeRegistry shapes) {
+        this.shapes = shapes;
     }
 
-    // Convertir List a XML (recursivo) con nombre de propiedad en singular
-    private String listToXML(List<Object> list, int level, String propertyName) {
-        StringBuilder xml = new StringBuilder();
-        String singularName = toSingular(propertyName);
-
-        for (Object item : list) {
-            xml.append(indent(level));
-            xml.append("<").append(singularName).append(">");
-
-            if (item instanceof Map || item instanceof List) {
-                xml.append("\n");
-                xml.append(valueToXML(item, level + 1));
-                xml.append(indent(level));
-                xml.append("</").append(singularName).append(">\n");
-            } else {
-                xml.append(valueToXML(item, level));
-                xml.append("</").append(singularName).append(">\n");
-            }
-        }
+    public ShapeRegistry getShapeRegistry() {
+        return shapes;
+    }
 
-        return xml.toString();
+    // Convertir una sola vez los subárboles que se repiten en el documento (ver SubtreeCache);
+    // se puede compartir entre instancias para acumular estadísticas y acotar la memoria en común
+    public void setSubtreeCache(SubtreeCache subtrees) {
+        this.subtrees = subtrees;
     }
 
-    // Convertir plural a singular (reglas básicas en español e inglés)
-    private String toSingular(String plural) {
-        if (plural == null || plural.isEmpty()) {
-            return "item";
-        }
+    public SubtreeCache getSubtreeCache() {
+        return subtrees;
+    }
 
-        plural = plural.toLowerCase();
+    // Histogramas por fase; se pueden compartir entre instancias para acumular conversiones
+    public PhaseHistograms getPhaseHistograms() {
+        return phases;
+    }
 
-        // Reglas en español
-        if (plural.endsWith("es")) {
-            // hobbies -> hobby, caracteres -> caracter
-            if (plural.endsWith("ies")) {
-                return plural.substring(0, plural.length() - 3) + "y";
-            }
-            return plural.substring(0, plural.length() - 2);
-        } else if (plural.endsWith("s")) {
-            // empleados -> empleado, libros -> libro
-            return plural.substring(0, plural.length() - 1);
-        }
+    public void setPhaseHistograms(PhaseHistograms phases) {
+        this.phases = phases;
+    }
 
-        // Si no termina en s/es, devolver como está
-        return plural;
+    // Solicitar la cancelación de la conversión en curso (se atiende entre elementos)
+    public void cancel() {
+        cancellation.cancel();
     }
 
-    // Crear indentación
-    private String indent(int level) {
-        return "  ".repeat(level);
+    // Sesión de memoización de una conversión; el perfil compacto no la usa
+    private SubtreeCache.Session openSubtrees(XmlProfile profile) {
+        return subtrees == null || profile.isCompact() ? null : subtrees.open();
     }
 
-    // Sanitizar nombre de etiqueta XML
-    private String sanitizeTagName(String name) {
-        return name.replaceAll("[^a-zA-Z0-9_-]", "_");
+    // Parsear el documento completo con la pila explícita de JsonReader
+    private Object parseValue(SubtreeCache.Session session) {
+        if (binary != null) {
+            if (projection != null) {
+                throw new IllegalStateException("La proyección solo se aplica a entrada JSON en texto");
+            }
+            cancellation.throwIfCancelled();
+            return BinaryJsonReader.read(format, binary, limits);
+        }
+        JsonReader reader = new JsonReader(json, limits);
+        reader.setCheckpoint(CHECKPOINT_STEP, (position, values) -> cancellation.throwIfCancelled());
+        reader.setProjection(projection);
+        reader.setSubtreeCache(session);
+        return reader.parse();
     }
 
-    // Escapar caracteres especiales XML
-    private String escapeXML(String text) {
-        return text
-                .replace("&", "&amp;")
-                .replace("<", "&lt;")
-                .replace(">", "&gt;")
-                .replace("\"", "&quot;")
-                .replace("'", "&apos;");
+    private int inputLength() {
+        return binary != null ? binary.length : json.length();
     }
 
     // Método de depuración para ver propiedades parseadas
     public void printProperties() {
-        Object parsed = parseValue();
+        Object parsed = parseValue(null);
         printValue(parsed, 0);
     }
 
@@ -383,19 +289,37 @@ public class JsonParser {
         }
     }
 
+    // Validar registrando la duración en la fase VALIDATION
+    public static boolean validateJSON(String json, PhaseHistograms phases) {
+        long start = System.nanoTime();
+        try {
+            return validateJSON(json);
+        } finally {
+            phases.recordSince(PhaseHistograms.Phase.VALIDATION, start);
+        }
+    }
+
     public static boolean validateJSON(String json){
         if(json.isEmpty()){
             return false;
         }
-        try {
-            new org.json.JSONObject(json);
-            return true;
-        } catch (org.json.JSONException e1) {
+        return OrgJsonValidator.isValid(json);
+    }
+
+    // org.json solo se carga al validar: el verificador resuelve los tipos de los catch al
+    // enlazar la clase que los contiene, así que aquí no arrastran a JsonParser
+    private static final class OrgJsonValidator {
+        static boolean isValid(String json) {
             try {
-                new org.json.JSONArray(json);
+                new org.json.JSONObject(json);
                 return true;
-            } catch (org.json.JSONException e2) {
-                return false;
+            } catch (org.json.JSONException e1) {
+                try {
+                    new org.json.JSONArray(json);
+                    return true;
+                } catch (org.json.JSONException e2) {
+                    return false;
+                }
             }
         }
     }
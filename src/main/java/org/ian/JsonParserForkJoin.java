@@ -1,26 +1,70 @@
 package org.ian;
 
+import java.io.*;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 public class JsonParserForkJoin {
 
-    private final ForkJoinPool forkJoinPool;
+    // Se crea con la primera conversión (ver pool()); 'parallelism' 0 = pool común
+    private volatile ForkJoinPool forkJoinPool;
+    private int parallelism;
     private final ExecutionMonitor monitor;
 
-    // Umbral para decidir cuándo dividir el trabajo
+    // Umbral por defecto para decidir cuándo dividir el trabajo
     private static final int THRESHOLD_MAP_SIZE = 5;
     private static final int THRESHOLD_LIST_SIZE = 10;
 
+    // Umbrales vigentes; se pueden ajustar en caliente (aplican desde la siguiente conversión)
+    private volatile int mapForkThreshold = THRESHOLD_MAP_SIZE;
+    private volatile int listForkThreshold = THRESHOLD_LIST_SIZE;
+
+    // Cada cuántos caracteres de entrada el parser publica progreso y revisa cancelación
+    private static final int PROGRESS_STEP = 4096;
+
+    // A partir de este nivel los subárboles se emiten con XmlWriter (iterativo, sin más forks)
+    // para que la profundidad del documento no crezca la pila de los hilos del pool
+    private static final int MAX_FORK_LEVEL = 64;
+
+    // Fragmentos de la raíz en vuelo por hilo del pool al escribir en un Writer
+    private static final int STREAM_WINDOW_FACTOR = 4;
+    // Niveles que se pueden abrir al repartir la salida en fragmentos
+    private static final int MAX_EXPAND_DEPTH = 16;
+
+    private volatile JsonReader.Limits limits = JsonReader.Limits.DEFAULT;
+
+    // Planes de forma compartidos por las tareas de conversión; null desactiva el atajo
+    private volatile ShapeRegistry shapes = new ShapeRegistry();
+
+    // Rutas seleccionadas; null convierte el documento completo
+    private volatile Projection projection;
+
+    // Convertir los hijos de la raíz mientras el parser sigue leyendo (solo toXML)
+    private volatile boolean pipelined;
+
+    // Memoización de subárboles repetidos; null (por defecto) la desactiva
+    private volatile SubtreeCache subtrees;
+
+    // Caracteres de entrada que acumula un lote antes de enviarse a convertir en modo pipeline
+    private static final int PIPELINE_BATCH_CHARS = 64 * 1024;
+
     public JsonParserForkJoin() {
-        this(ForkJoinPool.commonPool());
+        this.monitor = new ExecutionMonitor();
     }
 
     public JsonParserForkJoin(int parallelism) {
-        this.forkJoinPool = new ForkJoinPool(parallelism);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Paralelismo no válido: " + parallelism);
+        }
+        this.parallelism = parallelism;
         this.monitor = new ExecutionMonitor();
     }
 
@@ -31,261 +75,618 @@ public class JsonParserForkJoin {
 
     // Convertir JSON a XML usando ForkJoin
     public String toXML(String json) {
+        return toXML(json, XmlProfile.ELEMENTS);
+    }
+
+    // Convertir con otro perfil de salida solo en esta llamada; el modo pipeline emite el
+    // formato de elementos, así que con el perfil compacto no se usa. Tampoco con memoización:
+    // los subárboles se internan mientras se parsea y solo se pueden leer al terminar
+    public String toXML(String json, XmlProfile profile) {
+        String trimmed = json.trim();
+        SubtreeCache.Session session = openSubtrees(profile);
+        return toXML(trimmed.length(), profile, pipelined && !profile.isCompact() && session == null, session,
+                pipeline -> pool().invoke(new JsonParseTask(trimmed, limits, projection, monitor, pipeline, session)));
+    }
+
+    // JSON binario (CBOR o Smile): se lee en el hilo que llama, sin tokenizar, y el árbol se
+    // convierte en el pool igual que el de toXML(String)
+    public String toXML(byte[] binary, BinaryJsonReader.Format format) {
+        return toXML(binary, format, XmlProfile.ELEMENTS);
+    }
+
+    public String toXML(byte[] binary, BinaryJsonReader.Format format, XmlProfile profile) {
+        if (projection != null) {
+            throw new IllegalStateException("La proyección solo se aplica a entrada JSON en texto");
+        }
+        return toXML(binary.length, profile, false, null, pipeline -> BinaryJsonReader.read(format, binary, limits));
+    }
+
+    private String toXML(int inputLength, XmlProfile profile, boolean pipelined, SubtreeCache.Session session,
+                         Function<Pipeline, Object> parser) {
         monitor.reset();
-        monitor.startExecution();
+        monitor.startExecution(inputLength);
 
-        try {
-            JsonParseTask parseTask = new JsonParseTask(json.trim(), monitor);
-            Object parsed = forkJoinPool.invoke(parseTask);
+        ConversionEvents.ConversionEvent event = ConversionEvents.beginConversion();
+        String xml = null;
+
+        PhaseHistograms phases = monitor.getPhaseHistograms();
 
-            XmlConversionTask conversionTask = new XmlConversionTask(parsed, "root", 1, monitor);
-            String xmlContent = forkJoinPool.invoke(conversionTask);
+        Pipeline pipeline = pipelined ? new Pipeline() : null;
+        long allocation = AllocationTracker.begin();
+
+        try {
+            long start = System.nanoTime();
+            Object parsed = parser.apply(pipeline);
+            monitor.parseFinished();
+            phases.recordSince(PhaseHistograms.Phase.PARSE, start);
+
+            start = System.nanoTime();
+            String xmlContent = pipeline != null ? pipeline.finish() : null;
+            if (profile.isCompact()) {
+                // El elemento <root> lo escribe la propia tarea
+                xmlContent = pool().invoke(new CompactConversionTask(Collections.singletonList(parsed), 0, 1,
+                        "root", 1, profile, monitor, mapForkThreshold, listForkThreshold));
+            } else if (xmlContent == null) {
+                XmlConversionTask conversionTask = new XmlConversionTask(parsed, "root", 1, monitor,
+                        mapForkThreshold, listForkThreshold, shapes, session);
+                xmlContent = pool().invoke(conversionTask);
+            }
+            phases.recordSince(PhaseHistograms.Phase.CONVERSION, start);
 
-            StringBuilder result = new StringBuilder();
+            start = System.nanoTime();
+            StringBuilder result = new StringBuilder(xmlContent.length() + 64);
             result.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-            result.append("<root>\n");
-            result.append(xmlContent);
-            result.append("</root>");
+            if (profile.isCompact()) {
+                result.append(xmlContent);
+            } else {
+                result.append("<root>\n");
+                result.append(xmlContent);
+                result.append("</root>");
+            }
 
-            return result.toString();
+            xml = result.toString();
+            phases.recordSince(PhaseHistograms.Phase.ASSEMBLY, start);
+            monitor.recordOutputBuffer(xml.length());
+            return xml;
         } finally {
+            if (pipeline != null && xml == null) {
+                pipeline.cancel();
+            }
+            if (session != null) {
+                session.close();
+            }
+            monitor.addAllocatedBytes(AllocationTracker.end(allocation));
             monitor.endExecution();
+            monitor.recordConversion(inputLength, xml == null ? -1 : xml.length());
+            ConversionEvents.endConversion(event, "forkjoin", inputLength,
+                    xml == null ? 0 : xml.length(), xml != null);
         }
     }
 
-    // Obtener monitor de ejecución
-    public ExecutionMonitor getMonitor() {
-        return monitor;
+    // Destino de los fragmentos en orden; devuelve lo escrito (caracteres o bytes)
+    private interface FragmentSink<T> {
+        long write(T fragment) throws IOException;
     }
 
-    // Obtener estadísticas del pool
-    public PoolStats getPoolStats() {
-        return new PoolStats(forkJoinPool);
+    // Escribir el XML en un Writer: los hijos directos de la raíz se convierten en paralelo y se
+    // escriben en orden según terminan, con una ventana acotada de fragmentos en memoria
+    public void writeXML(String json, Writer out) throws IOException {
+        streamXML(json, fragment -> fragment, String::length, fragment -> {
+            out.write(fragment);
+            return fragment.length();
+        });
+        out.flush();
     }
 
-    // Cerrar el pool
-    public void shutdown() {
-        if (!forkJoinPool.isShutdown()) {
-            forkJoinPool.shutdown();
-            try {
-                if (!forkJoinPool.awaitTermination(5, TimeUnit.SECONDS)) {
-                    forkJoinPool.shutdownNow();
+    // Escribir el XML en UTF-8 sobre un canal: cada tarea codifica su fragmento en segmentos
+    // directos del pool y el hilo llamante los vuelca en orden con escrituras agrupadas, de modo
+    // que ni el tamaño del heap ni el límite de un String acotan la salida
+    public void writeXML(String json, GatheringByteChannel channel) throws IOException {
+        ByteBufferPool pool = ByteBufferPool.DEFAULT;
+        streamXML(json, fragment -> {
+            SegmentedBuffer buffer = new SegmentedBuffer(pool);
+            buffer.append(fragment);
+            buffer.finish();
+            return buffer;
+        }, SegmentedBuffer::size, buffer -> buffer.writeTo(channel));
+    }
+
+    private <T> void streamXML(String json, Function<String, T> encode, ToLongFunction<T> sizeOf,
+                               FragmentSink<T> sink) throws IOException {
+        String trimmed = json.trim();
+        monitor.reset();
+        monitor.startExecution(trimmed.length());
+
+        ConversionEvents.ConversionEvent event = ConversionEvents.beginConversion();
+        PhaseHistograms phases = monitor.getPhaseHistograms();
+        Deque<ForkJoinTask<T>> inFlight = new ArrayDeque<>();
+        long written = 0;
+        boolean success = false;
+        SubtreeCache.Session session = openSubtrees(XmlProfile.ELEMENTS);
+        long allocation = AllocationTracker.begin();
+
+        try {
+            long start = System.nanoTime();
+            Object parsed = pool().invoke(new JsonParseTask(trimmed, limits, projection, monitor, null, session));
+            monitor.parseFinished();
+            phases.recordSince(PhaseHistograms.Phase.PARSE, start);
+
+            start = System.nanoTime();
+            XmlConversionTask root = new XmlConversionTask(parsed, "root", 1, monitor,
+                    mapForkThreshold, listForkThreshold, shapes, session);
+            int window = Math.max(1, pool().getParallelism() * STREAM_WINDOW_FACTOR);
+            Iterator<Object> pending = root.fragments(window).iterator();
+
+            written += sink.write(encode.apply("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root>\n"));
+
+            while (pending.hasNext() || !inFlight.isEmpty()) {
+                while (inFlight.size() < window && pending.hasNext()) {
+                    Object next = pending.next();
+                    if (next instanceof String) {
+                        // Etiqueta literal: ya está resuelta, solo ocupa su turno en el orden
+                        RecursiveTask<T> literal = new RecursiveTask<T>() {
+                            @Override
+                            protected T compute() {
+                                return null;
+                            }
+                        };
+                        literal.complete(encode.apply((String) next));
+                        inFlight.add(literal);
+                        continue;
+                    }
+                    RecursiveTask<String> fragment = (RecursiveTask<String>) next;
+                    // La codificación se hace en el mismo hilo del pool que convirtió el fragmento
+                    inFlight.add(pool().submit(new RecursiveTask<T>() {
+                        @Override
+                        protected T compute() {
+                            long mark = AllocationTracker.begin();
+                            try {
+                                return encode.apply(fragment.invoke());
+                            } finally {
+                                monitor.addAllocatedBytes(AllocationTracker.end(mark));
+                            }
+                        }
+                    }));
+                    monitor.addTasksForked(1);
                 }
-            } catch (InterruptedException e) {
-                forkJoinPool.shutdownNow();
-                Thread.currentThread().interrupt();
+                T head = inFlight.peek().join();
+                monitor.recordOutputBuffer(bufferedSize(inFlight, sizeOf));
+                inFlight.poll();
+                written += sink.write(head);
             }
+
+            written += sink.write(encode.apply("</root>"));
+            phases.recordSince(PhaseHistograms.Phase.CONVERSION, start);
+            success = true;
+        } finally {
+            for (ForkJoinTask<T> task : inFlight) {
+                task.cancel(false);
+            }
+            if (session != null) {
+                session.close();
+            }
+            monitor.addAllocatedBytes(AllocationTracker.end(allocation));
+            monitor.endExecution();
+            monitor.recordConversion(trimmed.length(), success ? written : -1);
+            ConversionEvents.endConversion(event, "forkjoin", trimmed.length(), written, success);
         }
     }
 
-    // ========== TAREA DE PARSEO JSON ==========
-    private static class JsonParseTask extends RecursiveTask<Object> {
-        private final String json;
-        private final ExecutionMonitor monitor;
-        private int pos;
-
-        public JsonParseTask(String json, ExecutionMonitor monitor) {
-            this.json = json;
-            this.monitor = monitor;
-            this.pos = 0;
+    // Salida ya convertida que espera su turno en la ventana (incluye el fragmento que se escribe)
+    private static <T> long bufferedSize(Deque<ForkJoinTask<T>> inFlight, ToLongFunction<T> sizeOf) {
+        long size = 0;
+        for (ForkJoinTask<T> task : inFlight) {
+            if (task.isDone() && !task.isCompletedAbnormally()) {
+                size += sizeOf.applyAsLong(task.getRawResult());
+            }
         }
+        return size;
+    }
 
-        @Override
-        protected Object compute() {
-            monitor.incrementTasksCreated();
-            monitor.incrementActiveThreads();
-
-            try {
-                return parseValue();
-            } finally {
-                monitor.decrementActiveThreads();
-                monitor.incrementTasksCompleted();
-            }
+    // Comodidad sobre streams: entrada gzip detectada automáticamente y salida comprimida
+    // (PARALLEL_GZIP usa el mismo pool que la conversión). La salida sale por bloques, pero la
+    // entrada se descomprime entera en un String porque el reparto necesita el árbol completo;
+    // con memoria acotada, JsonParser.convertStreaming o ShardCoordinator
+    public void convertBuffered(InputStream in, OutputStream out, CompressedStreams.Compression compression)
+            throws IOException {
+        String json = NioFiles.readText(CompressedStreams.decompress(in));
+        try (Writer writer = new OutputStreamWriter(
+                CompressedStreams.compress(out, compression, poolFor(compression)), StandardCharsets.UTF_8)) {
+            writeXML(json, writer);
         }
+    }
 
-        private Object parseValue() {
-            skipWhitespace();
+    public int getMapForkThreshold() {
+        return mapForkThreshold;
+    }
 
-            if (pos >= json.length()) {
-                return null;
-            }
+    // Objetos con más claves que este umbral se convierten en paralelo
+    public void setMapForkThreshold(int threshold) {
+        this.mapForkThreshold = Math.max(0, threshold);
+    }
 
-            char c = json.charAt(pos);
+    public int getListForkThreshold() {
+        return listForkThreshold;
+    }
 
-            if (c == '{') {
-                return parseObject();
-            } else if (c == '[') {
-                return parseArray();
-            } else if (c == '"') {
-                return parseString();
-            } else if (c == 't' || c == 'f') {
-                return parseBoolean();
-            } else if (c == 'n') {
-                return parseNull();
-            } else {
-                return parseNumber();
-            }
+    // Listas con más elementos que este umbral se convierten en paralelo
+    public void setListForkThreshold(int threshold) {
+        this.listForkThreshold = Math.max(0, threshold);
+    }
+
+    // Cambiar el paralelismo del pool sin recrearlo. Solo vale para el pool propio del conversor
+    // (constructor con paralelismo): el pool común o uno recibido lo comparte el resto del proceso
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Paralelismo no válido: " + parallelism);
+        }
+        if (this.parallelism == 0) {
+            throw new UnsupportedOperationException("El pool no pertenece al conversor; su paralelismo no se puede cambiar");
         }
+        this.parallelism = parallelism;
+        ForkJoinPool pool = forkJoinPool;
+        if (pool != null) {
+            pool.setParallelism(parallelism);
+        }
+    }
 
-        private Map<String, Object> parseObject() {
-            Map<String, Object> map = new LinkedHashMap<>();
-            pos++;
-            skipWhitespace();
+    public void setProjection(Projection projection) {
+        this.projection = projection;
+    }
 
-            if (pos < json.length() && json.charAt(pos) == '}') {
-                pos++;
-                return map;
-            }
+    public Projection getProjection() {
+        return projection;
+    }
 
-            List<RecursiveTask<Map.Entry<String, Object>>> subtasks = new ArrayList<>();
+    // Solapar parseo y conversión en toXML: cada lote de hijos de la raíz (o de un hijo grande
+    // de la raíz) se convierte en cuanto el parser lo termina. writeXML no lo usa: su ventana
+    // de fragmentos ya acota la memoria y necesita el árbol completo para repartirlo.
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
 
-            while (pos < json.length()) {
-                skipWhitespace();
+    public boolean isPipelined() {
+        return pipelined;
+    }
 
-                if (json.charAt(pos) != '"') break;
-                String key = parseString();
+    public void setShapeRegistry(ShapeRegistry shapes) {
+        this.shapes = shapes;
+    }
 
-                skipWhitespace();
-                if (pos >= json.length() || json.charAt(pos) != ':') break;
-                pos++;
-                skipWhitespace();
+    public ShapeRegistry getShapeRegistry() {
+        return shapes;
+    }
 
-                int valueStart = pos;
-                Object value = parseValue();
+    // Convertir una sola vez los subárboles que se repiten en el documento (ver SubtreeCache);
+    // desactiva el modo pipeline
+    public void setSubtreeCache(SubtreeCache subtrees) {
+        this.subtrees = subtrees;
+    }
 
-                map.put(key, value);
+    public SubtreeCache getSubtreeCache() {
+        return subtrees;
+    }
 
-                skipWhitespace();
-                if (pos >= json.length()) break;
+    // Sesión de memoización de una conversión; el perfil compacto no la usa
+    private SubtreeCache.Session openSubtrees(XmlProfile profile) {
+        SubtreeCache cache = subtrees;
+        return cache == null || profile.isCompact() ? null : cache.open();
+    }
 
-                char next = json.charAt(pos);
-                if (next == ',') {
-                    pos++;
-                } else if (next == '}') {
-                    pos++;
-                    break;
-                }
-            }
+    // Límites de profundidad y tamaño aplicados al parsear
+    public void setLimits(JsonReader.Limits limits) {
+        this.limits = limits;
+    }
 
-            return map;
-        }
+    // Cancelar la conversión en curso; las tareas lo detectan en su siguiente frontera. Sin
+    // conversión en curso se aplica a la siguiente (como en JsonParser, que cancela antes de empezar)
+    public void cancel() {
+        monitor.cancel();
+    }
 
-        private List<Object> parseArray() {
-            List<Object> list = new ArrayList<>();
-            pos++;
-            skipWhitespace();
+    // Obtener monitor de ejecución
+    public ExecutionMonitor getMonitor() {
+        return monitor;
+    }
 
-            if (pos < json.length() && json.charAt(pos) == ']') {
-                pos++;
-                return list;
+    // Obtener estadísticas del pool; antes de crearlo se devuelven vacías (con el paralelismo que
+    // tendrá) para que consultarlas, p. ej. desde JMX, no lo cree
+    public PoolStats getPoolStats() {
+        ForkJoinPool pool = forkJoinPool;
+        if (pool == null) {
+            return new PoolStats(parallelism > 0 ? parallelism : ForkJoinPool.getCommonPoolParallelism());
+        }
+        return new PoolStats(pool);
+    }
+
+    // El pool se crea aquí la primera vez que hace falta: construir el conversor (la interfaz
+    // lo hace al arrancar) no carga ForkJoinPool ni reserva sus hilos
+    private ForkJoinPool pool() {
+        ForkJoinPool pool = forkJoinPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = forkJoinPool;
+                if (pool == null) {
+                    pool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+                    forkJoinPool = pool;
+                }
             }
+        }
+        return pool;
+    }
 
-            while (pos < json.length()) {
-                skipWhitespace();
-                Object value = parseValue();
-                list.add(value);
+    // Hilos ocupados del pool; 0 si todavía no se ha creado
+    public int getActiveThreadCount() {
+        ForkJoinPool pool = forkJoinPool;
+        return pool == null ? 0 : pool.getActiveThreadCount();
+    }
 
-                skipWhitespace();
-                if (pos >= json.length()) break;
+    // Solo la compresión en paralelo usa el pool
+    private ForkJoinPool poolFor(CompressedStreams.Compression compression) {
+        return compression == CompressedStreams.Compression.PARALLEL_GZIP ? pool() : null;
+    }
 
-                char next = json.charAt(pos);
-                if (next == ',') {
-                    pos++;
-                } else if (next == ']') {
-                    pos++;
-                    break;
+    // Cerrar el pool
+    public void shutdown() {
+        ForkJoinPool forkJoinPool = this.forkJoinPool;
+        if (forkJoinPool != null && !forkJoinPool.isShutdown()) {
+            forkJoinPool.shutdown();
+            try {
+                if (!forkJoinPool.awaitTermination(5, TimeUnit.SECONDS)) {
+                    forkJoinPool.shutdownNow();
                 }
+            } catch (InterruptedException e) {
+                forkJoinPool.shutdownNow();
+                Thread.currentThread().interrupt();
             }
+        }
+    }
 
-            return list;
+    // ========== CONVERSIÓN EN PIPELINE ==========
+    // Recibe los avisos del parser y lanza la conversión de lotes de hijos consecutivos de la
+    // raíz en cuanto se completan. Un hijo de la raíz que por sí solo supera un lote se abre:
+    // sus etiquetas se emiten como literales y sus propios hijos se convierten por lotes. Si se
+    // repite una clave en uno de esos dos niveles (el mapa conserva la posición de la primera y
+    // el valor de la última) se descarta todo y finish() devuelve null para convertir el árbol.
+    private class Pipeline implements JsonReader.SubtreeListener {
+        private final int mapThreshold = mapForkThreshold;
+        private final int listThreshold = listForkThreshold;
+        private final ShapeRegistry planShapes = shapes;
+
+        // Fragmentos en orden: etiquetas literales (String) o tareas que convierten un lote
+        private final List<Object> fragments = new ArrayList<>();
+        private boolean started;
+        private boolean discarded;
+
+        private final Batch rootBatch = new Batch();
+        private final Set<String> rootKeys = new HashSet<>();
+
+        // Hijo de la raíz que se está parseando: sus hijos se acumulan por si hay que abrirlo
+        private Object child;
+        private String childKey;
+        private Batch childBatch;
+        private boolean childOpened;
+        private String childCloseTag;
+        private final Set<String> childKeys = new HashSet<>();
+
+        // Hijos consecutivos de un mismo contenedor que convierte una sola tarea
+        private class Batch {
+            XmlConversionTask context;
+            boolean map;
+            String itemName;
+            int start;
+            final List<String> keys = new ArrayList<>();
+            final List<Object> values = new ArrayList<>();
         }
 
-        private String parseString() {
-            StringBuilder sb = new StringBuilder();
-            pos++;
+        @Override
+        public void opened(int depth, String key, Object container) {
+            if (discarded) {
+                return;
+            }
+            if (depth == 1) {
+                started = true;
+                monitor.incrementValuesEmitted();
+                configure(rootBatch, container, "root", 1, XmlWriter.toSingular("item"));
+                return;
+            }
+            child = container;
+            childKey = key;
+            childBatch = new Batch();
+            childOpened = false;
+            childKeys.clear();
+        }
 
-            while (pos < json.length()) {
-                char c = json.charAt(pos);
+        @Override
+        public void completed(int depth, String key, Object value, int position) {
+            if (discarded) {
+                return;
+            }
+            if (depth == 2) {
+                if (child instanceof Map && !childKeys.add(key)) {
+                    discard();
+                    return;
+                }
+                childBatch.keys.add(key);
+                childBatch.values.add(value);
+                if (!childOpened && position - rootBatch.start >= PIPELINE_BATCH_CHARS) {
+                    openChild(position);
+                } else if (childOpened && position - childBatch.start >= PIPELINE_BATCH_CHARS) {
+                    flush(childBatch, position);
+                }
+                return;
+            }
 
-                if (c == '"') {
-                    pos++;
-                    break;
-                } else if (c == '\\') {
-                    pos++;
-                    if (pos < json.length()) {
-                        char escaped = json.charAt(pos);
-                        switch (escaped) {
-                            case 'n': sb.append('\n'); break;
-                            case 't': sb.append('\t'); break;
-                            case 'r': sb.append('\r'); break;
-                            case '\\': sb.append('\\'); break;
-                            case '"': sb.append('"'); break;
-                            default: sb.append(escaped);
-                        }
-                        pos++;
-                    }
-                } else {
-                    sb.append(c);
-                    pos++;
+            if (rootBatch.map && !rootKeys.add(key)) {
+                discard();
+                return;
+            }
+            if (value == child && childOpened) {
+                flush(childBatch, position);
+                fragments.add(childCloseTag);
+                rootBatch.start = position;
+            } else {
+                rootBatch.keys.add(key);
+                rootBatch.values.add(value);
+                if (position - rootBatch.start >= PIPELINE_BATCH_CHARS) {
+                    flush(rootBatch, position);
                 }
             }
+            child = null;
+            childBatch = null;
+        }
 
-            return sb.toString();
+        // Mismo formato que appendMapEntry/appendListItem de la raíz con el hijo abierto
+        private void openChild(int position) {
+            flush(rootBatch, position);
+
+            String tag;
+            int tagLevel;
+            int childLevel;
+            if (rootBatch.map) {
+                tag = XmlWriter.sanitizeTagName(childKey);
+                tagLevel = 1;
+                childLevel = child instanceof Map ? 2 : 1;
+            } else {
+                tag = rootBatch.itemName;
+                tagLevel = 2;
+                childLevel = 3;
+            }
+            String itemName = XmlWriter.toSingular(rootBatch.map ? tag : "item");
+            configure(childBatch, child, tag, childLevel, itemName);
+
+            monitor.incrementValuesEmitted();
+            fragments.add(XmlWriter.indent(tagLevel) + "<" + tag + ">\n");
+            childCloseTag = XmlWriter.indent(tagLevel) + "</" + tag + ">\n";
+            childOpened = true;
+            flush(childBatch, position);
         }
 
-        private Object parseNumber() {
-            int start = pos;
+        private void configure(Batch batch, Object container, String tag, int level, String itemName) {
+            batch.map = container instanceof Map;
+            batch.itemName = itemName;
+            batch.context = new XmlConversionTask(null, tag, level, monitor, mapThreshold, listThreshold,
+                    planShapes, null);
+        }
 
-            if (pos < json.length() && json.charAt(pos) == '-') {
-                pos++;
+        // Enviar el lote a convertir y empezar uno nuevo a partir de 'position'
+        private void flush(Batch batch, int position) {
+            batch.start = position;
+            if (batch.values.isEmpty()) {
+                return;
             }
+            XmlConversionTask context = batch.context;
+            boolean map = batch.map;
+            String itemName = batch.itemName;
+            String[] keys = batch.keys.toArray(new String[0]);
+            Object[] values = batch.values.toArray();
+            batch.keys.clear();
+            batch.values.clear();
+
+            RecursiveTask<String> task = context.createMonitoredTask(() -> {
+                StringBuilder sb = ScratchBuffers.acquire();
+                for (int i = 0; i < values.length; i++) {
+                    monitor.checkCancelled();
+                    if (map) {
+                        context.appendMapEntry(sb, XmlWriter.sanitizeTagName(keys[i]), values[i]);
+                    } else {
+                        context.appendListItem(sb, itemName, values[i]);
+                    }
+                }
+                return ScratchBuffers.toStringAndRelease(sb);
+            });
+            fragments.add(task);
+            pool().execute(task);
+            monitor.addTasksForked(1);
+        }
 
-            while (pos < json.length() && Character.isDigit(json.charAt(pos))) {
-                pos++;
-            }
+        private void discard() {
+            discarded = true;
+            cancel();
+        }
 
-            if (pos < json.length() && json.charAt(pos) == '.') {
-                pos++;
-                while (pos < json.length() && Character.isDigit(json.charAt(pos))) {
-                    pos++;
-                }
+        // Contenido XML bajo <root> en orden, o null si hay que convertir el árbol completo
+        @SuppressWarnings("unchecked")
+        String finish() {
+            if (!started || discarded) {
+                cancel();
+                return null;
             }
+            flush(rootBatch, rootBatch.start);
 
-            String numStr = json.substring(start, pos);
-
-            try {
-                if (numStr.contains(".")) {
-                    return Double.parseDouble(numStr);
+            long waitStart = System.nanoTime();
+            StringBuilder xml = new StringBuilder();
+            for (Object fragment : fragments) {
+                if (fragment instanceof String) {
+                    xml.append((String) fragment);
                 } else {
-                    return Long.parseLong(numStr);
+                    xml.append(((ForkJoinTask<String>) fragment).join());
                 }
-            } catch (NumberFormatException e) {
-                return numStr;
             }
+            monitor.getPhaseHistograms().recordSince(PhaseHistograms.Phase.FORK_JOIN_WAIT, waitStart);
+            return xml.toString();
         }
 
-        private Boolean parseBoolean() {
-            if (json.startsWith("true", pos)) {
-                pos += 4;
-                return true;
-            } else if (json.startsWith("false", pos)) {
-                pos += 5;
-                return false;
+        void cancel() {
+            for (Object fragment : fragments) {
+                if (fragment instanceof ForkJoinTask) {
+                    ((ForkJoinTask<?>) fragment).cancel(false);
+                }
             }
-            return null;
         }
+    }
 
-        private Object parseNull() {
-            if (json.startsWith("null", pos)) {
-                pos += 4;
-                return null;
-            }
-            return null;
+    // ========== TAREA DE PARSEO JSON ==========
+    // Una sola tarea secuencial (JsonReader): el parseo no se divide, solo la conversión a XML
+    private static class JsonParseTask extends RecursiveTask<Object> {
+        private final String json;
+        private final JsonReader.Limits limits;
+        private final Projection projection;
+        private final ExecutionMonitor monitor;
+        private final JsonReader.SubtreeListener listener;
+        private final SubtreeCache.Session subtrees;
+
+        public JsonParseTask(String json, JsonReader.Limits limits, Projection projection,
+                             ExecutionMonitor monitor, JsonReader.SubtreeListener listener,
+                             SubtreeCache.Session subtrees) {
+            this.json = json;
+            this.limits = limits;
+            this.projection = projection;
+            this.monitor = monitor;
+            this.listener = listener;
+            this.subtrees = subtrees;
         }
 
-        private void skipWhitespace() {
-            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
-                pos++;
+        @Override
+        protected Object compute() {
+            monitor.incrementTasksCreated();
+            monitor.incrementActiveThreads();
+            // Hay una sola tarea de parseo por conversión: no se muestrea
+            ConversionEvents.TaskComputeEvent event = ConversionEvents.beginTask(false);
+            long allocation = AllocationTracker.begin();
+
+            try {
+                monitor.checkCancelled();
+
+                // Parser iterativo: publica avance y atiende cancelación cada PROGRESS_STEP caracteres
+                JsonReader reader = new JsonReader(json, limits);
+                reader.setCheckpoint(PROGRESS_STEP, (position, values) -> {
+                    monitor.reportInput(position, values);
+                    monitor.checkCancelled();
+                });
+                reader.setProjection(projection);
+                reader.setSubtreeListener(listener);
+                reader.setSubtreeCache(subtrees);
+
+                Object result = reader.parse();
+                monitor.reportInput(json.length(), reader.getValuesParsed());
+                monitor.setTreeBytes(reader.getEstimatedTreeBytes());
+                return result;
+            } finally {
+                monitor.addAllocatedBytes(AllocationTracker.end(allocation));
+                ConversionEvents.endTask(event, "JsonParseTask", 0, json.length());
+                monitor.decrementActiveThreads();
+                monitor.incrementTasksCompleted();
             }
         }
     }
@@ -296,211 +697,376 @@ public class JsonParserForkJoin {
         private final String tagName;
         private final int level;
         private final ExecutionMonitor monitor;
-
-        public XmlConversionTask(Object value, String tagName, int level, ExecutionMonitor monitor) {
+        private final int mapThreshold;
+        private final int listThreshold;
+        private final ShapeRegistry shapes;
+        private final SubtreeCache.Session subtrees;
+
+        public XmlConversionTask(Object value, String tagName, int level, ExecutionMonitor monitor,
+                                 int mapThreshold, int listThreshold, ShapeRegistry shapes,
+                                 SubtreeCache.Session subtrees) {
             this.value = value;
             this.tagName = tagName;
             this.level = level;
             this.monitor = monitor;
+            this.mapThreshold = mapThreshold;
+            this.listThreshold = listThreshold;
+            this.shapes = shapes;
+            this.subtrees = subtrees;
+        }
+
+        // Subtarea con los mismos umbrales que la tarea actual
+        private XmlConversionTask subtask(Object childValue, String childTag, int childLevel) {
+            return new XmlConversionTask(childValue, childTag, childLevel, monitor, mapThreshold, listThreshold,
+                    shapes, subtrees);
         }
 
         @Override
         protected String compute() {
+            long allocation = AllocationTracker.begin();
+            try {
+                StringBuilder xml = ScratchBuffers.acquire();
+                computeInto(xml);
+                return ScratchBuffers.toStringAndRelease(xml);
+            } finally {
+                monitor.addAllocatedBytes(AllocationTracker.end(allocation));
+            }
+        }
+
+        // Convertir directamente sobre el buffer del padre: el camino secuencial no crea un
+        // String intermedio por nivel
+        private void computeInto(StringBuilder xml) {
             monitor.incrementTasksCreated();
             monitor.incrementActiveThreads();
+            ConversionEvents.TaskComputeEvent event = ConversionEvents.beginTask();
 
             try {
+                monitor.checkCancelled();
+                monitor.incrementValuesEmitted();
+
                 if (value == null) {
-                    return "";
+                    return;
                 }
 
                 if (value instanceof Map) {
-                    return convertMap((Map<String, Object>) value);
+                    convertCached(value, level, null, xml, () -> {
+                        if (level > MAX_FORK_LEVEL) {
+                            convertIteratively(xml);
+                        } else {
+                            convertMap((Map<String, Object>) value, xml);
+                        }
+                    });
                 } else if (value instanceof List) {
-                    return convertList((List<Object>) value);
+                    convertCached(value, level + 1, "item", xml, () -> {
+                        if (level > MAX_FORK_LEVEL) {
+                            convertIteratively(xml);
+                        } else {
+                            convertListWithName((List<Object>) value, "item", xml);
+                        }
+                    });
                 } else {
-                    return escapeXML(String.valueOf(value));
+                    int before = xml.length();
+                    XmlWriter.appendEscaped(xml, String.valueOf(value));
+                    monitor.addOutputEmitted(xml.length() - before);
                 }
             } finally {
+                ConversionEvents.endTask(event, "XmlConversionTask", level, subtreeSize());
                 monitor.decrementActiveThreads();
                 monitor.incrementTasksCompleted();
             }
         }
 
-        private String convertMap(Map<String, Object> map) {
-            StringBuilder xml = new StringBuilder();
+        // Fragmentos de la salida en orden de documento: etiquetas literales (String) de los
+        // contenedores que se abren o tareas que convierten un hijo completo. Un contenedor con
+        // menos de 'minFragments' hijos se abre para que ningún fragmento acapare la salida.
+        private List<Object> fragments(int minFragments) {
+            List<Object> fragments = new ArrayList<>();
+            if (value instanceof Map || value instanceof List) {
+                expand(fragments, value, level, toSingular("item"), minFragments, 0);
+            } else {
+                fragments.add(this);
+            }
+            return fragments;
+        }
 
-            if (map.size() > THRESHOLD_MAP_SIZE) {
-                // Procesamiento paralelo
-                List<RecursiveTask<String>> subtasks = new ArrayList<>();
+        // Mismo formato que convertMap/convertListWithName a nivel 'taskLevel'
+        private void expand(List<Object> fragments, Object container, int taskLevel, String singularName,
+                            int minFragments, int depth) {
+            monitor.incrementValuesEmitted();
+            XmlConversionTask context = subtask(null, tagName, taskLevel);
 
+            if (container instanceof Map) {
+                Map<String, Object> map = (Map<String, Object>) container;
+                boolean open = depth < MAX_EXPAND_DEPTH && map.size() < minFragments;
                 for (Map.Entry<String, Object> entry : map.entrySet()) {
                     String key = sanitizeTagName(entry.getKey());
                     Object val = entry.getValue();
-
-                    String finalKey = key;
-                    Object finalVal = val;
-
-                    RecursiveTask<String> task = createMonitoredTask(() -> {
-                        StringBuilder sb = new StringBuilder();
-                        sb.append(indent(level));
-                        sb.append("<").append(finalKey).append(">");
-
-                        if (finalVal instanceof Map) {
-                            sb.append("\n");
-                            XmlConversionTask subtask = new XmlConversionTask(finalVal, finalKey, level + 1, monitor);
-                            sb.append(subtask.compute());
-                            sb.append(indent(level));
-                            sb.append("</").append(finalKey).append(">\n");
-                        } else if (finalVal instanceof List) {
-                            sb.append("\n");
-                            sb.append(convertListWithName((List<Object>) finalVal, finalKey));
-                            sb.append(indent(level));
-                            sb.append("</").append(finalKey).append(">\n");
+                    if (open && (val instanceof Map || val instanceof List)) {
+                        fragments.add(indent(taskLevel) + "<" + key + ">\n");
+                        if (val instanceof Map) {
+                            expand(fragments, val, taskLevel + 1, null, minFragments, depth + 1);
                         } else {
-                            XmlConversionTask subtask = new XmlConversionTask(finalVal, finalKey, level, monitor);
-                            sb.append(subtask.compute());
-                            sb.append("</").append(finalKey).append(">\n");
+                            expand(fragments, val, taskLevel, toSingular(key), minFragments, depth + 1);
                         }
+                        fragments.add(indent(taskLevel) + "</" + key + ">\n");
+                    } else {
+                        fragments.add(context.mapEntryTask(key, val));
+                    }
+                }
+            } else if (container instanceof PrimitiveList<?> primitives) {
+                for (int from = 0; from < primitives.size(); from += PrimitiveList.CHUNK) {
+                    int to = Math.min(primitives.size(), from + PrimitiveList.CHUNK);
+                    fragments.add(context.rangeTask(primitives, from, to, singularName));
+                }
+            } else {
+                List<Object> list = (List<Object>) container;
+                boolean open = depth < MAX_EXPAND_DEPTH && list.size() < minFragments;
+                for (Object item : list) {
+                    if (open && (item instanceof Map || item instanceof List)) {
+                        fragments.add(indent(taskLevel + 1) + "<" + singularName + ">\n");
+                        expand(fragments, item, taskLevel + 2, toSingular("item"), minFragments, depth + 1);
+                        fragments.add(indent(taskLevel + 1) + "</" + singularName + ">\n");
+                    } else {
+                        fragments.add(context.listItemTask(singularName, item));
+                    }
+                }
+            }
+        }
 
-                        return sb.toString();
-                    });
+        private int subtreeSize() {
+            if (value instanceof Map) return ((Map<?, ?>) value).size();
+            if (value instanceof List) return ((List<?>) value).size();
+            return 0;
+        }
+
+        // Cuerpo de un contenedor (sus hijos a nivel 'childLevel'): con memoización, si el subárbol
+        // se repite y ya se convirtió con el mismo nivel y nombre de elemento se copia; si no, se
+        // convierte y se guarda para las siguientes apariciones
+        private void convertCached(Object node, int childLevel, String itemName, StringBuilder xml, Runnable convert) {
+            SubtreeCache.Session cache = subtrees;
+            if (cache == null) {
+                convert.run();
+                return;
+            }
+            String body = cache.lookup(node, childLevel, itemName);
+            if (body != null) {
+                xml.append(body);
+                monitor.addValuesEmitted(cache.valueCount(node));
+                monitor.addOutputEmitted(body.length());
+                return;
+            }
+            int start = xml.length();
+            convert.run();
+            cache.store(node, childLevel, itemName, xml, start, xml.length());
+        }
+
+        // Subárbol profundo: mismo formato que convertMap/convertList pero con pila explícita
+        private void convertIteratively(StringBuilder xml) {
+            int before = xml.length();
+            XmlWriter writer = new XmlWriter(xml);
+            writer.setCancellationToken(monitor.getCancellationToken());
+            writer.setNestedListStep(2);
+            writer.setShapeRegistry(shapes);
+            writer.setSubtreeCache(subtrees);
+
+            if (value instanceof Map) {
+                writer.writeMap((Map<String, Object>) value, level);
+            } else {
+                writer.writeList((List<Object>) value, level + 1, "item");
+            }
+
+            monitor.addValuesEmitted(writer.getValuesWritten());
+            monitor.addOutputEmitted(xml.length() - before);
+        }
+
+        private void convertMap(Map<String, Object> map, StringBuilder xml) {
+            // Objeto plano con forma conocida: emisión directa sin subtareas
+            int before = xml.length();
+            if (shapes != null && shapes.emit(xml, map, level)) {
+                monitor.addValuesEmitted(map.size());
+                monitor.addOutputEmitted(xml.length() - before);
+                return;
+            }
+
+            if (map.size() > mapThreshold) {
+                // Procesamiento paralelo
+                List<RecursiveTask<String>> subtasks = new ArrayList<>();
 
+                for (Map.Entry<String, Object> entry : map.entrySet()) {
+                    RecursiveTask<String> task = mapEntryTask(sanitizeTagName(entry.getKey()), entry.getValue());
                     subtasks.add(task);
                     task.fork();
                 }
+                ConversionEvents.forked("XmlConversionTask", level, subtasks.size());
+                monitor.addTasksForked(subtasks.size());
 
+                long waitStart = System.nanoTime();
                 for (RecursiveTask<String> task : subtasks) {
                     xml.append(task.join());
                 }
+                monitor.getPhaseHistograms().recordSince(PhaseHistograms.Phase.FORK_JOIN_WAIT, waitStart);
             } else {
                 // Procesamiento secuencial
                 for (Map.Entry<String, Object> entry : map.entrySet()) {
-                    String key = sanitizeTagName(entry.getKey());
-                    Object val = entry.getValue();
-
-                    xml.append(indent(level));
-                    xml.append("<").append(key).append(">");
-
-                    if (val instanceof Map) {
-                        xml.append("\n");
-                        XmlConversionTask subtask = new XmlConversionTask(val, key, level + 1, monitor);
-                        xml.append(subtask.compute());
-                        xml.append(indent(level));
-                        xml.append("</").append(key).append(">\n");
-                    } else if (val instanceof List) {
-                        xml.append("\n");
-                        xml.append(convertListWithName((List<Object>) val, key));
-                        xml.append(indent(level));
-                        xml.append("</").append(key).append(">\n");
-                    } else {
-                        XmlConversionTask subtask = new XmlConversionTask(val, key, level, monitor);
-                        xml.append(subtask.compute());
-                        xml.append("</").append(key).append(">\n");
-                    }
+                    monitor.checkCancelled();
+                    appendMapEntry(xml, sanitizeTagName(entry.getKey()), entry.getValue());
                 }
             }
-
-            return xml.toString();
         }
 
-        private String convertList(List<Object> list) {
-            return convertListWithName(list, "item");
+        // Escribir <key>valor</key>; solo se contabiliza el marcado propio, el hijo cuenta el suyo
+        private void appendMapEntry(StringBuilder xml, String key, Object val) {
+            int before = xml.length();
+            int childStart;
+            int childEnd;
+
+            XmlWriter.indent(xml, level);
+            xml.append('<').append(key).append('>');
+
+            if (val instanceof Map) {
+                xml.append('\n');
+                childStart = xml.length();
+                subtask(val, key, level + 1).computeInto(xml);
+                childEnd = xml.length();
+                XmlWriter.indent(xml, level);
+            } else if (val instanceof List) {
+                xml.append('\n');
+                monitor.incrementValuesEmitted();
+                childStart = xml.length();
+                List<Object> list = (List<Object>) val;
+                convertCached(list, level + 1, toSingular(key), xml, () -> convertListWithName(list, key, xml));
+                childEnd = xml.length();
+                XmlWriter.indent(xml, level);
+            } else {
+                childStart = xml.length();
+                subtask(val, key, level).computeInto(xml);
+                childEnd = xml.length();
+            }
+            xml.append("</").append(key).append(">\n");
+
+            monitor.addOutputEmitted(xml.length() - before - (childEnd - childStart));
         }
 
-        private String convertListWithName(List<Object> list, String propertyName) {
-            StringBuilder xml = new StringBuilder();
+        private void convertListWithName(List<Object> list, String propertyName, StringBuilder xml) {
             String singularName = toSingular(propertyName);
 
-            if (list.size() > THRESHOLD_LIST_SIZE) {
+            if (list instanceof PrimitiveList<?> primitives) {
+                convertPrimitives(primitives, singularName, xml);
+            } else if (list.size() > listThreshold) {
                 // Procesamiento paralelo
                 List<RecursiveTask<String>> subtasks = new ArrayList<>();
 
                 for (Object item : list) {
-                    Object finalItem = item;
-                    RecursiveTask<String> task = createMonitoredTask(() -> {
-                        StringBuilder sb = new StringBuilder();
-                        sb.append(indent(level + 1));
-                        sb.append("<").append(singularName).append(">");
-
-                        if (finalItem instanceof Map || finalItem instanceof List) {
-                            sb.append("\n");
-                            XmlConversionTask subtask = new XmlConversionTask(finalItem, singularName, level + 2, monitor);
-                            sb.append(subtask.compute());
-                            sb.append(indent(level + 1));
-                            sb.append("</").append(singularName).append(">\n");
-                        } else {
-                            XmlConversionTask subtask = new XmlConversionTask(finalItem, singularName, level + 1, monitor);
-                            sb.append(subtask.compute());
-                            sb.append("</").append(singularName).append(">\n");
-                        }
-
-                        return sb.toString();
-                    });
-
+                    RecursiveTask<String> task = listItemTask(singularName, item);
                     subtasks.add(task);
                     task.fork();
                 }
+                ConversionEvents.forked("XmlConversionTask", level, subtasks.size());
+                monitor.addTasksForked(subtasks.size());
 
+                long waitStart = System.nanoTime();
                 for (RecursiveTask<String> task : subtasks) {
                     xml.append(task.join());
                 }
+                monitor.getPhaseHistograms().recordSince(PhaseHistograms.Phase.FORK_JOIN_WAIT, waitStart);
             } else {
                 // Procesamiento secuencial
                 for (Object item : list) {
-                    xml.append(indent(level + 1));
-                    xml.append("<").append(singularName).append(">");
-
-                    if (item instanceof Map || item instanceof List) {
-                        xml.append("\n");
-                        XmlConversionTask subtask = new XmlConversionTask(item, singularName, level + 2, monitor);
-                        xml.append(subtask.compute());
-                        xml.append(indent(level + 1));
-                        xml.append("</").append(singularName).append(">\n");
-                    } else {
-                        XmlConversionTask subtask = new XmlConversionTask(item, singularName, level + 1, monitor);
-                        xml.append(subtask.compute());
-                        xml.append("</").append(singularName).append(">\n");
-                    }
+                    monitor.checkCancelled();
+                    appendListItem(xml, singularName, item);
                 }
             }
+        }
 
-            return xml.toString();
+        // Array primitivo: un bloque de PrimitiveList.CHUNK elementos por subtarea en lugar de
+        // una subtarea por elemento
+        private void convertPrimitives(PrimitiveList<?> list, String singularName, StringBuilder xml) {
+            int size = list.size();
+            if (size <= PrimitiveList.CHUNK) {
+                monitor.checkCancelled();
+                int before = xml.length();
+                list.appendItems(xml, 0, size, level + 1, singularName);
+                monitor.addValuesEmitted(size);
+                monitor.addOutputEmitted(xml.length() - before);
+                return;
+            }
+
+            List<RecursiveTask<String>> subtasks = new ArrayList<>();
+            for (int from = 0; from < size; from += PrimitiveList.CHUNK) {
+                RecursiveTask<String> task = rangeTask(list, from, Math.min(size, from + PrimitiveList.CHUNK), singularName);
+                subtasks.add(task);
+                task.fork();
+            }
+            ConversionEvents.forked("XmlConversionTask", level, subtasks.size());
+            monitor.addTasksForked(subtasks.size());
+
+            long waitStart = System.nanoTime();
+            for (RecursiveTask<String> task : subtasks) {
+                xml.append(task.join());
+            }
+            monitor.getPhaseHistograms().recordSince(PhaseHistograms.Phase.FORK_JOIN_WAIT, waitStart);
         }
 
-        private String indent(int lvl) {
-            return "  ".repeat(lvl);
+        private void appendListItem(StringBuilder xml, String singularName, Object item) {
+            int before = xml.length();
+            int childStart;
+            int childEnd;
+
+            XmlWriter.indent(xml, level + 1);
+            xml.append('<').append(singularName).append('>');
+
+            if (item instanceof Map || item instanceof List) {
+                xml.append('\n');
+                childStart = xml.length();
+                subtask(item, singularName, level + 2).computeInto(xml);
+                childEnd = xml.length();
+                XmlWriter.indent(xml, level + 1);
+            } else {
+                childStart = xml.length();
+                subtask(item, singularName, level + 1).computeInto(xml);
+                childEnd = xml.length();
+            }
+            xml.append("</").append(singularName).append(">\n");
+
+            monitor.addOutputEmitted(xml.length() - before - (childEnd - childStart));
         }
 
-        private String sanitizeTagName(String name) {
-            return name.replaceAll("[^a-zA-Z0-9_-]", "_");
+        private String indent(int lvl) {
+            return XmlWriter.indent(lvl);
         }
 
-        private String escapeXML(String text) {
-            return text
-                    .replace("&", "&amp;")
-                    .replace("<", "&lt;")
-                    .replace(">", "&gt;")
-                    .replace("\"", "&quot;")
-                    .replace("'", "&apos;");
+        private String sanitizeTagName(String name) {
+            return XmlWriter.sanitizeTagName(name);
         }
 
         private String toSingular(String plural) {
-            if (plural == null || plural.isEmpty()) {
-                return "item";
-            }
+            return XmlWriter.toSingular(plural);
+        }
 
-            plural = plural.toLowerCase();
+        private RecursiveTask<String> mapEntryTask(String key, Object val) {
+            return createMonitoredTask(() -> {
+                StringBuilder sb = ScratchBuffers.acquire();
+                appendMapEntry(sb, key, val);
+                return ScratchBuffers.toStringAndRelease(sb);
+            });
+        }
 
-            if (plural.endsWith("ies")) {
-                return plural.substring(0, plural.length() - 3) + "y";
-            } else if (plural.endsWith("es")) {
-                return plural.substring(0, plural.length() - 2);
-            } else if (plural.endsWith("s")) {
-                return plural.substring(0, plural.length() - 1);
-            }
+        private RecursiveTask<String> listItemTask(String singularName, Object item) {
+            return createMonitoredTask(() -> {
+                StringBuilder sb = ScratchBuffers.acquire();
+                appendListItem(sb, singularName, item);
+                return ScratchBuffers.toStringAndRelease(sb);
+            });
+        }
 
-            return plural;
+        private RecursiveTask<String> rangeTask(PrimitiveList<?> list, int from, int to, String singularName) {
+            return createMonitoredTask(() -> {
+                StringBuilder sb = ScratchBuffers.acquire();
+                list.appendItems(sb, from, to, level + 1, singularName);
+                monitor.addValuesEmitted(to - from);
+                monitor.addOutputEmitted(sb.length());
+                return ScratchBuffers.toStringAndRelease(sb);
+            });
         }
 
         private <T> RecursiveTask<T> createMonitoredTask(Supplier<T> action) {
@@ -509,9 +1075,12 @@ public class JsonParserForkJoin {
                 protected T compute() {
                     monitor.incrementTasksCreated();
                     monitor.incrementActiveThreads();
+                    long allocation = AllocationTracker.begin();
                     try {
+                        monitor.checkCancelled();
                         return action.get();
                     } finally {
+                        monitor.addAllocatedBytes(AllocationTracker.end(allocation));
                         monitor.decrementActiveThreads();
                         monitor.incrementTasksCompleted();
                     }
@@ -520,6 +1089,181 @@ public class JsonParserForkJoin {
         }
     }
 
+    // ========== TAREA DE CONVERSIÓN AL PERFIL COMPACTO ==========
+    // Escribe los hijos [from, to) de un contenedor: elementos de una lista ('itemName') o
+    // entradas de un objeto que no son atributos (itemName null; el resto ya está en la etiqueta
+    // del padre). Un rango grande se reparte en lotes que se convierten en paralelo y se unen en
+    // orden, y un hijo grande se abre para repartir a su vez sus hijos.
+    private static class CompactConversionTask extends RecursiveTask<String> {
+        // Hijos por lote como máximo al repartir un rango
+        private static final int MAX_BATCH = 256;
+
+        private final List<?> children;
+        private final int from;
+        private final int to;
+        private final String itemName;
+        private final int level;
+        private final XmlProfile profile;
+        private final ExecutionMonitor monitor;
+        private final int mapThreshold;
+        private final int listThreshold;
+
+        CompactConversionTask(List<?> children, int from, int to, String itemName, int level, XmlProfile profile,
+                              ExecutionMonitor monitor, int mapThreshold, int listThreshold) {
+            this.children = children;
+            this.from = from;
+            this.to = to;
+            this.itemName = itemName;
+            this.level = level;
+            this.profile = profile;
+            this.monitor = monitor;
+            this.mapThreshold = mapThreshold;
+            this.listThreshold = listThreshold;
+        }
+
+        private CompactConversionTask subtask(List<?> childChildren, int childFrom, int childTo,
+                                              String childItemName, int childLevel) {
+            return new CompactConversionTask(childChildren, childFrom, childTo, childItemName, childLevel,
+                    profile, monitor, mapThreshold, listThreshold);
+        }
+
+        @Override
+        protected String compute() {
+            monitor.incrementTasksCreated();
+            monitor.incrementActiveThreads();
+            ConversionEvents.TaskComputeEvent event = ConversionEvents.beginTask();
+            long allocation = AllocationTracker.begin();
+            try {
+                monitor.checkCancelled();
+                int threshold = itemName == null ? mapThreshold : listThreshold;
+                if (to - from > threshold && level <= MAX_FORK_LEVEL) {
+                    return fanOut(threshold);
+                }
+                return convertRange();
+            } finally {
+                monitor.addAllocatedBytes(AllocationTracker.end(allocation));
+                ConversionEvents.endTask(event, "CompactConversionTask", level, to - from);
+                monitor.decrementActiveThreads();
+                monitor.incrementTasksCompleted();
+            }
+        }
+
+        // Lotes de unos cuantos hijos por hilo del pool, entre el umbral y MAX_BATCH
+        private String fanOut(int threshold) {
+            int count = to - from;
+            int parallelism = Math.max(1, getPool().getParallelism());
+            int batch = Math.max(threshold, Math.min(MAX_BATCH, count / (8 * parallelism)));
+            batch = Math.max(1, batch);
+
+            List<CompactConversionTask> subtasks = new ArrayList<>();
+            for (int start = from; start < to; start += batch) {
+                CompactConversionTask task = subtask(children, start, Math.min(to, start + batch), itemName, level);
+                subtasks.add(task);
+                task.fork();
+            }
+            ConversionEvents.forked("CompactConversionTask", level, subtasks.size());
+            monitor.addTasksForked(subtasks.size());
+
+            long waitStart = System.nanoTime();
+            StringBuilder xml = new StringBuilder();
+            for (CompactConversionTask task : subtasks) {
+                xml.append(task.join());
+            }
+            monitor.getPhaseHistograms().recordSince(PhaseHistograms.Phase.FORK_JOIN_WAIT, waitStart);
+            return xml.toString();
+        }
+
+        @SuppressWarnings("unchecked")
+        private String convertRange() {
+            StringBuilder xml = ScratchBuffers.acquire();
+            CompactXmlWriter writer = new CompactXmlWriter(xml, profile);
+            writer.setCancellationToken(monitor.getCancellationToken());
+            long nested = 0;
+
+            for (int i = from; i < to; i++) {
+                monitor.checkCancelled();
+                String name;
+                Object value;
+                if (itemName == null) {
+                    Map.Entry<String, Object> entry = (Map.Entry<String, Object>) children.get(i);
+                    name = XmlWriter.sanitizeTagName(entry.getKey());
+                    value = entry.getValue();
+                } else {
+                    name = itemName;
+                    value = children.get(i);
+                }
+
+                if (!isLarge(writer, value)) {
+                    if (itemName == null) {
+                        writer.writeMember(name, value);
+                    } else {
+                        writer.writeItem(name, value);
+                    }
+                    continue;
+                }
+
+                // Hijo grande: se abre aquí y sus hijos se reparten en el siguiente nivel
+                int before = xml.length();
+                if (value instanceof Map) {
+                    Map<String, Object> map = (Map<String, Object>) value;
+                    if (writer.openMap(name, map)) {
+                        List<Map.Entry<String, Object>> members = members(map);
+                        xml.append(subtask(members, 0, members.size(), null, level + 1).invoke());
+                        xml.append("</").append(name).append('>');
+                    }
+                } else {
+                    List<Object> list = randomAccess((List<Object>) value);
+                    // Sin contenedores, cada elemento de un array hijo de un objeto lleva el nombre de la clave
+                    boolean flat = itemName == null && !profile.isItemWrappers();
+                    if (!flat) {
+                        xml.append('<').append(name).append('>');
+                    }
+                    String childName = itemName != null ? "item" : flat ? name : CompactXmlWriter.itemName(name);
+                    xml.append(subtask(list, 0, list.size(), childName, level + 1).invoke());
+                    if (!flat) {
+                        xml.append("</").append(name).append('>');
+                    }
+                }
+                nested += xml.length() - before;
+            }
+
+            monitor.addValuesEmitted(writer.getValuesWritten());
+            monitor.addOutputEmitted(xml.length() - nested);
+            return ScratchBuffers.toStringAndRelease(xml);
+        }
+
+        // Merece repartirse: objeto con muchas entradas o array que no va como lista delimitada
+        private boolean isLarge(CompactXmlWriter writer, Object value) {
+            if (level > MAX_FORK_LEVEL) {
+                return false;
+            }
+            if (value instanceof Map) {
+                return ((Map<?, ?>) value).size() > mapThreshold;
+            }
+            if (value instanceof List<?> list) {
+                if (list instanceof PrimitiveList || list.size() <= listThreshold) {
+                    return false;
+                }
+                return itemName != null || !writer.writesDelimited(list);
+            }
+            return false;
+        }
+
+        private static List<Map.Entry<String, Object>> members(Map<String, Object> map) {
+            List<Map.Entry<String, Object>> members = new ArrayList<>();
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                if (!CompactXmlWriter.isAttribute(entry.getValue())) {
+                    members.add(entry);
+                }
+            }
+            return members;
+        }
+
+        private static List<Object> randomAccess(List<Object> list) {
+            return list instanceof RandomAccess ? list : new ArrayList<>(list);
+        }
+    }
+
     // ========== MONITOR DE EJECUCIÓN ==========
     public static class ExecutionMonitor {
         private final AtomicInteger tasksCreated = new AtomicInteger(0);
@@ -529,27 +1273,202 @@ public class JsonParserForkJoin {
         private final AtomicLong endTime = new AtomicLong(0);
         private volatile boolean isExecuting = false;
 
-        public void reset() {
+        // Progreso por volumen: caracteres de entrada consumidos y de XML emitidos
+        private final AtomicLong inputLength = new AtomicLong(0);
+        private final AtomicLong inputConsumed = new AtomicLong(0);
+        private final AtomicLong valuesParsed = new AtomicLong(0);
+        private final LongAdder valuesEmitted = new LongAdder();
+        private final LongAdder outputEmitted = new LongAdder();
+        private volatile boolean parsing = false;
+        // Una cancelación pedida sin conversión en curso queda pendiente para la siguiente;
+        // 'cancelConsumed' indica que la atendió una conversión y la siguiente empieza limpia
+        private volatile CancellationToken cancellation = new CancellationToken();
+        private boolean cancelConsumed;
+        // Acumulado entre conversiones; se reinicia explícitamente (no en reset())
+        private final PhaseHistograms phases = new PhaseHistograms();
+        private final LongAdder totalConversions = new LongAdder();
+        private final LongAdder totalFailures = new LongAdder();
+        private final LongAdder totalInput = new LongAdder();
+        private final LongAdder totalOutput = new LongAdder();
+        private final LongAdder totalTasks = new LongAdder();
+        // Solo las tareas que se reparten de verdad (fork o envío al pool), no las que se
+        // ejecutan en línea en el hilo del padre
+        private final LongAdder totalForked = new LongAdder();
+        private final LongAdder totalAllocated = new LongAdder();
+
+        // Memoria de la conversión: bytes asignados por todos los hilos que participan, tamaño
+        // estimado del árbol intermedio y mayor búfer de salida retenido a la vez (caracteres)
+        private final LongAdder allocatedBytes = new LongAdder();
+        private volatile long treeBytes;
+        private final AtomicLong peakOutputBuffer = new AtomicLong(0);
+
+        public synchronized void reset() {
             tasksCreated.set(0);
             tasksCompleted.set(0);
             activeThreads.set(0);
             startTime.set(0);
             endTime.set(0);
             isExecuting = false;
+            inputLength.set(0);
+            inputConsumed.set(0);
+            valuesParsed.set(0);
+            valuesEmitted.reset();
+            outputEmitted.reset();
+            parsing = false;
+            // Sin descartar una cancelación que llegó antes de empezar. Las tareas que queden de
+            // una conversión cancelada siguen viendo su token hasta aquí
+            if (cancelConsumed) {
+                cancellation = new CancellationToken();
+                cancelConsumed = false;
+            }
+            allocatedBytes.reset();
+            treeBytes = 0;
+            peakOutputBuffer.set(0);
         }
 
-        public void startExecution() {
+        public synchronized void startExecution() {
             isExecuting = true;
-            startTime.set(System.currentTimeMillis());
+            startTime.set(System.nanoTime());
+        }
+
+        public void startExecution(long totalInput) {
+            inputLength.set(totalInput);
+            parsing = true;
+            startExecution();
+        }
+
+        void parseFinished() {
+            inputConsumed.set(inputLength.get());
+            parsing = false;
+        }
+
+        void reportInput(long consumed, long values) {
+            inputConsumed.set(consumed);
+            valuesParsed.set(values);
+        }
+
+        void incrementValuesEmitted() {
+            valuesEmitted.increment();
+        }
+
+        void addValuesEmitted(long values) {
+            valuesEmitted.add(values);
+        }
+
+        void addOutputEmitted(long chars) {
+            outputEmitted.add(chars);
+        }
+
+        void addAllocatedBytes(long bytes) {
+            if (bytes > 0) {
+                allocatedBytes.add(bytes);
+                totalAllocated.add(bytes);
+            }
+        }
+
+        void setTreeBytes(long bytes) {
+            treeBytes = bytes;
+        }
+
+        void recordOutputBuffer(long chars) {
+            peakOutputBuffer.accumulateAndGet(chars, Math::max);
+        }
+
+        // -1 si la JVM no permite medir la asignación por hilo
+        public long getAllocatedBytes() {
+            return AllocationTracker.isSupported() ? allocatedBytes.sum() : -1;
+        }
+
+        public long getTreeBytes() {
+            return treeBytes;
+        }
+
+        public long getPeakOutputBuffer() {
+            return peakOutputBuffer.get();
         }
 
-        public void endExecution() {
-            endTime.set(System.currentTimeMillis());
+        public synchronized void cancel() {
+            if (!isExecuting) {
+                cancelConsumed = false;
+            }
+            cancellation.cancel();
+        }
+
+        // Retirar una cancelación pendiente (pedida sin conversión en curso) para aplicarla a
+        // otro conversor; true si la había
+        synchronized boolean takePendingCancel() {
+            if (!cancellation.isCancelled() || cancelConsumed || isExecuting) {
+                return false;
+            }
+            cancellation = new CancellationToken();
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return cancellation.isCancelled();
+        }
+
+        void checkCancelled() {
+            cancellation.throwIfCancelled();
+        }
+
+        CancellationToken getCancellationToken() {
+            return cancellation;
+        }
+
+        public synchronized void endExecution() {
+            endTime.set(System.nanoTime());
             isExecuting = false;
+            // La cancelación recibida hasta aquí era para esta conversión
+            cancelConsumed = cancellation.isCancelled();
         }
 
         void incrementTasksCreated() {
             tasksCreated.incrementAndGet();
+            totalTasks.increment();
+        }
+
+        void addTasksForked(int tasks) {
+            totalForked.add(tasks);
+        }
+
+        // Acumular una conversión terminada (output < 0 si falló o se canceló)
+        void recordConversion(long input, long output) {
+            totalConversions.increment();
+            totalInput.add(input);
+            if (output < 0) {
+                totalFailures.increment();
+            } else {
+                totalOutput.add(output);
+            }
+        }
+
+        public long getTotalConversions() {
+            return totalConversions.sum();
+        }
+
+        public long getTotalFailures() {
+            return totalFailures.sum();
+        }
+
+        public long getTotalInput() {
+            return totalInput.sum();
+        }
+
+        public long getTotalOutput() {
+            return totalOutput.sum();
+        }
+
+        public long getTotalTasks() {
+            return totalTasks.sum();
+        }
+
+        public long getTotalForked() {
+            return totalForked.sum();
+        }
+
+        public long getTotalAllocated() {
+            return totalAllocated.sum();
         }
 
         void incrementTasksCompleted() {
@@ -577,28 +1496,66 @@ public class JsonParserForkJoin {
         }
 
         public long getExecutionTimeMs() {
+            return TimeUnit.NANOSECONDS.toMillis(getExecutionTimeNanos());
+        }
+
+        public long getExecutionTimeNanos() {
             if (isExecuting) {
-                return System.currentTimeMillis() - startTime.get();
+                return System.nanoTime() - startTime.get();
             }
             return endTime.get() - startTime.get();
         }
 
+        public PhaseHistograms getPhaseHistograms() {
+            return phases;
+        }
+
         public boolean isExecuting() {
             return isExecuting;
         }
 
+        public long getInputLength() {
+            return inputLength.get();
+        }
+
+        public long getInputConsumed() {
+            return inputConsumed.get();
+        }
+
+        public long getOutputEmitted() {
+            return outputEmitted.sum();
+        }
+
+        // La primera mitad avanza con la entrada consumida y la segunda con los valores convertidos
         public double getProgress() {
-            int created = tasksCreated.get();
-            if (created == 0) return 0.0;
-            return (double) tasksCompleted.get() / created * 100.0;
+            long total = inputLength.get();
+            if (total == 0) return 0.0;
+
+            if (parsing) {
+                return (double) inputConsumed.get() / total * 50.0;
+            }
+
+            long parsed = valuesParsed.get();
+            if (parsed == 0) return isExecuting ? 50.0 : 100.0;
+            return 50.0 + Math.min(1.0, (double) valuesEmitted.sum() / parsed) * 50.0;
+        }
+
+        // Tiempo restante estimado a partir del ritmo observado, -1 si aún no se puede estimar
+        public long getEstimatedRemainingMs() {
+            double progress = getProgress();
+            if (!isExecuting || progress <= 0.0) return -1;
+            return (long) (getExecutionTimeMs() * (100.0 - progress) / progress);
         }
 
         @Override
         public String toString() {
             return String.format(
-                    "ExecutionMonitor[tareas=%d/%d, activos=%d, tiempo=%dms, progreso=%.1f%%]",
+                    "ExecutionMonitor[tareas=%d/%d, activos=%d, tiempo=%dms, progreso=%.1f%%, " +
+                            "entrada=%d/%d, salida=%d, asignado=%d, arbol=%d, bufer=%d]",
                     tasksCompleted.get(), tasksCreated.get(), activeThreads.get(),
-                    getExecutionTimeMs(), getProgress()
+                    getExecutionTimeMs(), getProgress(),
+                    inputConsumed.get(), inputLength.get(), outputEmitted.sum(),
+                    getAllocatedBytes(), treeBytes, peakOutputBuffer.get()
             );
         }
     }
@@ -624,6 +1581,18 @@ public static class PoolStats {
         this.isQuiescent = pool.isQuiescent();
     }
 
+    // Pool todavía sin crear: sin hilos ni tareas
+    private PoolStats(int parallelism) {
+        this.parallelism = parallelism;
+        this.poolSize = 0;
+        this.activeThreadCount = 0;
+        this.runningThreadCount = 0;
+        this.queuedSubmissionCount = 0;
+        this.queuedTaskCount = 0;
+        this.stealCount = 0;
+        this.isQuiescent = true;
+    }
+
     public int getParallelism() { return parallelism; }
     public int getPoolSize() { return poolSize; }
     public int getActiveThreadCount() { return activeThreadCount; }
@@ -0,0 +1,697 @@
+package org.ian;
+
+import java.util.*;
+
+// Parser JSON no recursivo: la anidación se guarda en una pila explícita que crece en el heap
+public class JsonReader {
+
+    // Límites para rechazar pronto entradas hostiles
+    public static class Limits {
+        public static final Limits DEFAULT = new Limits(100_000, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+        private final int maxDepth;
+        private final int maxSize;
+        private final int maxStringLength;
+
+        public Limits(int maxDepth, int maxSize, int maxStringLength) {
+            this.maxDepth = maxDepth;
+            this.maxSize = maxSize;
+            this.maxStringLength = maxStringLength;
+        }
+
+        public int getMaxDepth() { return maxDepth; }
+        public int getMaxSize() { return maxSize; }
+        public int getMaxStringLength() { return maxStringLength; }
+
+        @Override
+        public String toString() {
+            return String.format("Limits[maxDepth=%d, maxSize=%d, maxStringLength=%d]",
+                    maxDepth, maxSize, maxStringLength);
+        }
+    }
+
+    // Punto de control periódico (progreso, cancelación) invocado entre elementos
+    public interface Checkpoint {
+        void reached(int position, long valuesParsed);
+    }
+
+    // Avisos de los dos primeros niveles del documento mientras se parsea: nivel 1 es el
+    // contenedor raíz y nivel 2 sus hijos. 'key' es la clave en el objeto padre (null en listas).
+    public interface SubtreeListener {
+        // Contenedor abierto en el nivel 'depth' (los vacíos y los arrays primitivos no se abren)
+        void opened(int depth, String key, Object container);
+
+        // Valor completo añadido al contenedor de nivel 'depth'; 'position' es el final del valor
+        void completed(int depth, String key, Object value, int position);
+    }
+
+    private static final int INITIAL_STACK = 32;
+
+    // Marca de un valor saltado por la proyección (no se añade a su contenedor)
+    private static final Object SKIPPED = new Object();
+    private static final int MAX_SCRATCH_CAPACITY = 64 * 1024;
+    private static final int LISTENER_DEPTH = 2;
+
+    private final String json;
+    private final Limits limits;
+    private int pos;
+    // Buffer para cadenas con escapes; se sustituye si crece por encima del máximo
+    private StringBuilder scratch = new StringBuilder();
+    private long valuesParsed;
+    private long treeBytes;
+
+    // Claves repetidas resueltas a una sola instancia
+    private KeySymbolTable symbols = new KeySymbolTable();
+
+    // Rutas seleccionadas; null convierte el documento completo
+    private Projection projection;
+
+    // Hash-consing de subárboles: cada contenedor completo se sustituye por su instancia canónica
+    private SubtreeCache.Session subtrees;
+    // Inicio (posición y valores parseados) del valor en curso y, por contenedor abierto, del suyo
+    // junto con el hash estructural de lo que lleva; 'closed' indica que el valor en curso es un
+    // contenedor recién cerrado cuyo hash está en 'closedHash'
+    private int valueStart;
+    private long valueIndex;
+    private boolean closed;
+    private int closedHash;
+    private int[] starts;
+    private long[] startValues;
+    private int[] hashes;
+
+    private Checkpoint checkpoint;
+    private SubtreeListener listener;
+    private int checkpointStep = Integer.MAX_VALUE;
+    private int lastCheckpoint;
+
+    // Pila explícita: contenedor abierto, clave pendiente (solo en objetos) y, con proyección,
+    // estado de la ruta e índice del siguiente elemento
+    private Object[] containers = new Object[INITIAL_STACK];
+    private String[] keys = new String[INITIAL_STACK];
+    private Projection.Node[] states;
+    private int[] counts;
+    private int depth;
+
+    public JsonReader(String json) {
+        this(json, Limits.DEFAULT);
+    }
+
+    public JsonReader(String json, Limits limits) {
+        if (json.length() > limits.getMaxSize()) {
+            throw new JsonLimitException("Documento de " + json.length() +
+                    " caracteres supera el máximo de " + limits.getMaxSize());
+        }
+        this.json = json;
+        this.limits = limits;
+        this.pos = 0;
+    }
+
+    // Registrar un punto de control que se invoca cada 'step' caracteres consumidos
+    public void setCheckpoint(int step, Checkpoint checkpoint) {
+        this.checkpointStep = step;
+        this.checkpoint = checkpoint;
+    }
+
+    public void setSubtreeListener(SubtreeListener listener) {
+        this.listener = listener;
+    }
+
+    // Compartir una tabla de símbolos entre documentos parseados por el mismo hilo
+    public void setSymbolTable(KeySymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    // Convertir solo las rutas de la proyección; el resto se salta sin construir valores
+    public void setProjection(Projection projection) {
+        this.projection = projection;
+        if (projection != null && states == null) {
+            states = new Projection.Node[containers.length];
+            counts = new int[containers.length];
+        }
+    }
+
+    // Compartir los subárboles repetidos a través de la sesión (null lo desactiva)
+    public void setSubtreeCache(SubtreeCache.Session subtrees) {
+        this.subtrees = subtrees;
+        if (subtrees != null && starts == null) {
+            starts = new int[containers.length];
+            startValues = new long[containers.length];
+            hashes = new int[containers.length];
+        }
+    }
+
+    public KeySymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public int getPosition() {
+        return pos;
+    }
+
+    public long getValuesParsed() {
+        return valuesParsed;
+    }
+
+    // Tamaño aproximado en el heap del árbol construido (cabeceras, entradas y arrays con
+    // referencias comprimidas); las claves no cuentan porque se comparten por la tabla de símbolos
+    public long getEstimatedTreeBytes() {
+        return treeBytes;
+    }
+
+    // Parsear el documento completo sin recursión
+    @SuppressWarnings("unchecked")
+    public Object parse() {
+        Object value;
+
+        // Inicio de un valor
+        while (true) {
+            valuesParsed++;
+            skipWhitespace();
+            valueStart = pos;
+            valueIndex = valuesParsed;
+            closed = false;
+
+            Projection.Node state = null;
+            if (projection != null) {
+                state = childState();
+            }
+
+            if (pos >= json.length()) {
+                value = null;
+            } else {
+                char c = json.charAt(pos);
+
+                if (projection != null && (state == null ||
+                        (!state.isTerminal() && c != '{' && c != '['))) {
+                    // Fuera de la proyección: saltar sin construir nada
+                    skipValue();
+                    value = SKIPPED;
+                } else if (c == '{') {
+                    pos++;
+                    skipWhitespace();
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    if (pos < json.length() && json.charAt(pos) == '}') {
+                        pos++; // Objeto vacío
+                        value = map;
+                    } else {
+                        push(map, state);
+                        if (readKey()) continue;
+                        value = pop();
+                    }
+                } else if (c == '[') {
+                    pos++;
+                    skipWhitespace();
+                    if (pos < json.length() && json.charAt(pos) == ']') {
+                        pos++; // Array vacío
+                        value = new ArrayList<>();
+                    } else {
+                        // Con proyección solo si el array entero está seleccionado
+                        value = depth < limits.getMaxDepth() && (state == null || state.isTerminal())
+                                ? parsePrimitiveArray() : null;
+                        if (value == null) {
+                            push(new ArrayList<>(), state);
+                            continue;
+                        }
+                    }
+                } else if (c == '"') {
+                    value = parseString();
+                } else if (c == 't' || c == 'f') {
+                    value = parseBoolean();
+                } else if (c == 'n') {
+                    value = parseNull();
+                } else {
+                    value = parseNumber();
+                }
+            }
+
+            // Valor completo: colgarlo del contenedor abierto y cerrar los que terminen
+            while (true) {
+                if (value != SKIPPED) {
+                    treeBytes += estimateBytes(value);
+                }
+                if (depth == 0) {
+                    return value == SKIPPED ? null : value;
+                }
+
+                Object top = containers[depth - 1];
+                boolean isMap = top instanceof Map;
+                if (subtrees != null && value != SKIPPED) {
+                    value = intern(value, isMap ? keys[depth - 1] : null);
+                }
+                if (value == SKIPPED) {
+                    // No se añade, pero cuenta para los índices de la lista
+                } else if (isMap) {
+                    ((Map<String, Object>) top).put(keys[depth - 1], value);
+                } else {
+                    ((List<Object>) top).add(value);
+                }
+                if (counts != null) {
+                    counts[depth - 1]++;
+                }
+                if (listener != null && depth <= LISTENER_DEPTH && value != SKIPPED) {
+                    listener.completed(depth, isMap ? keys[depth - 1] : null, value, pos);
+                }
+                checkpoint();
+
+                skipWhitespace();
+                if (pos < json.length()) {
+                    char next = json.charAt(pos);
+                    if (next == ',') {
+                        pos++;
+                        if (!isMap || readKey()) break;
+                    } else if (next == (isMap ? '}' : ']')) {
+                        pos++;
+                    }
+                }
+
+                // Fin del contenedor (o entrada mal formada): cerrarlo y seguir hacia arriba
+                value = pop();
+            }
+        }
+    }
+
+    // Sustituir un contenedor completo por su instancia canónica y sumar el hash del valor al
+    // del contenedor en la cima
+    private Object intern(Object value, String key) {
+        int hash;
+        if (value instanceof Map || value instanceof List) {
+            hash = closed ? closedHash : SubtreeCache.hashOf(value);
+            value = subtrees.intern(value, hash, pos - valueStart, valuesParsed - valueIndex);
+        } else {
+            hash = SubtreeCache.scalarHash(value);
+        }
+        closed = false;
+        hashes[depth - 1] = SubtreeCache.combine(hashes[depth - 1], key, hash);
+        return value;
+    }
+
+    // Leer "clave": del objeto en la cima; false si no hay una clave válida
+    private boolean readKey() {
+        skipWhitespace();
+        if (pos >= json.length() || json.charAt(pos) != '"') {
+            return false;
+        }
+        String key = parseKey();
+
+        skipWhitespace();
+        if (pos >= json.length() || json.charAt(pos) != ':') {
+            return false;
+        }
+        pos++;
+
+        keys[depth - 1] = key;
+        return true;
+    }
+
+    // Estado de la proyección para el valor que empieza: null si queda fuera
+    private Projection.Node childState() {
+        if (depth == 0) {
+            return projection.root();
+        }
+        Projection.Node parent = states[depth - 1];
+        if (parent.isTerminal()) {
+            return parent;
+        }
+        return containers[depth - 1] instanceof Map
+                ? parent.step(keys[depth - 1])
+                : parent.step(counts[depth - 1]);
+    }
+
+    private void push(Object container, Projection.Node state) {
+        if (depth >= limits.getMaxDepth()) {
+            throw new JsonLimitException("Profundidad de anidación supera el máximo de " +
+                    limits.getMaxDepth() + " en la posición " + pos);
+        }
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+            if (states != null) {
+                states = Arrays.copyOf(states, depth * 2);
+                counts = Arrays.copyOf(counts, depth * 2);
+            }
+            if (starts != null) {
+                starts = Arrays.copyOf(starts, depth * 2);
+                startValues = Arrays.copyOf(startValues, depth * 2);
+                hashes = Arrays.copyOf(hashes, depth * 2);
+            }
+        }
+        containers[depth] = container;
+        keys[depth] = null;
+        if (states != null) {
+            states[depth] = state;
+            counts[depth] = 0;
+        }
+        if (starts != null) {
+            starts[depth] = valueStart;
+            startValues[depth] = valueIndex;
+            hashes[depth] = SubtreeCache.seed(container instanceof Map);
+        }
+        depth++;
+        if (listener != null && depth <= LISTENER_DEPTH) {
+            listener.opened(depth, depth > 1 ? keys[depth - 2] : null, container);
+        }
+    }
+
+    private Object pop() {
+        depth--;
+        Object container = containers[depth];
+        containers[depth] = null;
+        keys[depth] = null;
+        if (states != null) {
+            states[depth] = null;
+        }
+        if (starts != null) {
+            valueStart = starts[depth];
+            valueIndex = startValues[depth];
+            closed = true;
+            closedHash = hashes[depth];
+        }
+        return container;
+    }
+
+    private void checkpoint() {
+        if (checkpoint != null && pos - lastCheckpoint >= checkpointStep) {
+            lastCheckpoint = pos;
+            checkpoint.reached(pos, valuesParsed);
+        }
+    }
+
+    // Clave sin escapes: se calcula el hash recorriendo el texto y se busca en la tabla de
+    // símbolos sin asignar memoria; con escapes se decodifica y se interna el resultado
+    private String parseKey() {
+        int start = pos + 1;
+        int maxEnd = (int) Math.min(json.length(), (long) start + limits.getMaxStringLength());
+        int hash = 0;
+
+        for (int i = start; i < maxEnd; i++) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                pos = i + 1;
+                return symbols.lookup(json, start, i, hash);
+            }
+            if (c == '\\') {
+                break;
+            }
+            hash = 31 * hash + c;
+        }
+
+        return symbols.intern(parseString());
+    }
+
+    // Saltar un valor completo sin asignar memoria ni decodificar cadenas: solo se siguen
+    // comillas, escapes y el nivel de anidación
+    private void skipValue() {
+        int length = json.length();
+        int nesting = 0;
+
+        while (pos < length) {
+            char c = json.charAt(pos);
+
+            if (c == '"') {
+                pos++;
+                while (pos < length) {
+                    char s = json.charAt(pos++);
+                    if (s == '"') break;
+                    if (s == '\\') pos++;
+                }
+                if (nesting == 0) return;
+            } else if (c == '{' || c == '[') {
+                nesting++;
+                pos++;
+            } else if (c == '}' || c == ']') {
+                if (nesting == 0) return; // Cierre del contenedor padre
+                pos++;
+                if (--nesting == 0) return;
+            } else if (nesting == 0 && (c == ',' || Character.isWhitespace(c))) {
+                return;
+            } else {
+                if (c == ',') checkpoint();
+                pos++;
+            }
+        }
+    }
+
+    private String parseString() {
+        int maxLength = limits.getMaxStringLength();
+        int start = ++pos; // Saltar '"' inicial
+
+        // Camino rápido: sin escapes la cadena es un substring del documento
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c == '"') {
+                return json.substring(start, pos++);
+            } else if (c == '\\') {
+                break;
+            }
+            pos++;
+            if (pos - start > maxLength) {
+                throw new JsonLimitException("Cadena en la posición " + pos +
+                        " supera el máximo de " + maxLength + " caracteres");
+            }
+        }
+        if (pos >= json.length()) {
+            return json.substring(start);
+        }
+
+        // Con escapes: se reutiliza el buffer del lector
+        StringBuilder sb = scratch;
+        sb.setLength(0);
+        sb.append(json, start, pos);
+
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+
+            if (c == '"') {
+                pos++; // Saltar '"' final
+                break;
+            } else if (c == '\\') {
+                pos++;
+                if (pos < json.length()) {
+                    char escaped = json.charAt(pos);
+                    switch (escaped) {
+                        case 'n': sb.append('\n'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'r': sb.append('\r'); break;
+                        case '\\': sb.append('\\'); break;
+                        case '"': sb.append('"'); break;
+                        default: sb.append(escaped);
+                    }
+                    pos++;
+                }
+            } else {
+                sb.append(c);
+                pos++;
+            }
+
+            if (sb.length() > maxLength) {
+                throw new JsonLimitException("Cadena en la posición " + pos +
+                        " supera el máximo de " + maxLength + " caracteres");
+            }
+        }
+
+        String result = sb.toString();
+        if (sb.capacity() > MAX_SCRATCH_CAPACITY) {
+            scratch = new StringBuilder();
+        }
+        return result;
+    }
+
+    private Object parseNumber() {
+        int start = pos;
+        boolean decimal = scanNumber();
+
+        try {
+            if (decimal) {
+                return Double.parseDouble(json.substring(start, pos));
+            } else {
+                // Sin substring intermedio para los enteros
+                return Long.parseLong(json, start, pos, 10);
+            }
+        } catch (NumberFormatException e) {
+            return json.substring(start, pos);
+        }
+    }
+
+    // Estimación del valor sin sus hijos, que se cuentan al completarse cada uno
+    private static long estimateBytes(Object value) {
+        if (value instanceof PrimitiveList<?> primitives) {
+            return primitives.estimatedBytes();
+        } else if (value instanceof Map<?, ?> map) {
+            // LinkedHashMap, su tabla y una entrada enlazada por clave
+            return 72 + 48L * map.size();
+        } else if (value instanceof List<?> list) {
+            // ArrayList y su array con el crecimiento habitual
+            return 40 + 6L * list.size();
+        } else if (value instanceof String text) {
+            return 40 + text.length();
+        } else if (value instanceof Long || value instanceof Double) {
+            return 16;
+        }
+        // Boolean y null no asignan nada
+        return 0;
+    }
+
+    // Avanzar sobre un número; true si tiene parte decimal o exponente
+    private boolean scanNumber() {
+        int start = pos;
+        boolean decimal = false;
+
+        if (pos < json.length() && json.charAt(pos) == '-') {
+            pos++;
+        }
+
+        skipDigits();
+
+        if (pos < json.length() && json.charAt(pos) == '.') {
+            decimal = true;
+            pos++;
+            skipDigits();
+        }
+
+        // Exponente (1e5, 2.5E-3)
+        if (pos > start && pos < json.length() && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E')) {
+            int mark = pos;
+            pos++;
+            if (pos < json.length() && (json.charAt(pos) == '+' || json.charAt(pos) == '-')) {
+                pos++;
+            }
+            int digits = pos;
+            skipDigits();
+            if (pos == digits) {
+                pos = mark;
+            } else {
+                decimal = true;
+            }
+        }
+        return decimal;
+    }
+
+    // Array homogéneo de enteros, de decimales o de booleanos: se lee directamente sobre una
+    // PrimitiveList. Con cualquier otro valor, una mezcla de tipos o un array mal formado se
+    // devuelve null con la posición restaurada y el array sigue el camino genérico.
+    private PrimitiveList<?> parsePrimitiveArray() {
+        int start = pos;
+        long valuesBefore = valuesParsed;
+        char first = json.charAt(pos);
+        PrimitiveList<?> list;
+
+        if (first == 't' || first == 'f') {
+            PrimitiveList.Booleans booleans = new PrimitiveList.Booleans();
+            list = booleans;
+            do {
+                if (json.startsWith("true", pos)) {
+                    pos += 4;
+                    booleans.addBoolean(true);
+                } else if (json.startsWith("false", pos)) {
+                    pos += 5;
+                    booleans.addBoolean(false);
+                } else {
+                    list = null;
+                    break;
+                }
+            } while (nextPrimitive());
+        } else if (first == '-' || (first >= '0' && first <= '9')) {
+            int mark = pos;
+            boolean decimal = scanNumber();
+            pos = mark;
+            list = decimal ? parseDoubles() : parseLongs();
+        } else {
+            list = null;
+        }
+
+        if (list == null || pos < 0) {
+            pos = start;
+            valuesParsed = valuesBefore;
+            return null;
+        }
+        list.trimToSize();
+        return list;
+    }
+
+    private PrimitiveList.Longs parseLongs() {
+        PrimitiveList.Longs longs = new PrimitiveList.Longs();
+        do {
+            int start = pos;
+            if (scanNumber()) {
+                return null;
+            }
+            try {
+                longs.addLong(Long.parseLong(json, start, pos, 10));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } while (nextPrimitive());
+        return longs;
+    }
+
+    private PrimitiveList.Doubles parseDoubles() {
+        PrimitiveList.Doubles doubles = new PrimitiveList.Doubles();
+        do {
+            int start = pos;
+            if (!scanNumber()) {
+                return null;
+            }
+            try {
+                doubles.addDouble(Double.parseDouble(json.substring(start, pos)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } while (nextPrimitive());
+        return doubles;
+    }
+
+    // Tras un elemento: true si sigue otro, false si el array se cerró; ante cualquier otra
+    // cosa deja pos en -1 para que parsePrimitiveArray descarte la lista
+    private boolean nextPrimitive() {
+        valuesParsed++;
+        checkpoint();
+        skipWhitespace();
+        if (pos < json.length()) {
+            char next = json.charAt(pos);
+            if (next == ',') {
+                pos++;
+                skipWhitespace();
+                return pos < json.length() || fail();
+            } else if (next == ']') {
+                pos++;
+                return false;
+            }
+        }
+        return fail();
+    }
+
+    private boolean fail() {
+        pos = -1;
+        return false;
+    }
+
+    private void skipDigits() {
+        while (pos < json.length() && Character.isDigit(json.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private Boolean parseBoolean() {
+        if (json.startsWith("true", pos)) {
+            pos += 4;
+            return true;
+        } else if (json.startsWith("false", pos)) {
+            pos += 5;
+            return false;
+        }
+        return null;
+    }
+
+    private Object parseNull() {
+        if (json.startsWith("null", pos)) {
+            pos += 4;
+        }
+        return null;
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+    }
+}
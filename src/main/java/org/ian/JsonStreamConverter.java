@@ -0,0 +1,471 @@
+package org.ian;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Conversión en streaming: lee el JSON por un buffer fijo que se rellena desde un Reader,
+// InputStream o ReadableByteChannel y emite el XML (mismo formato que JsonParser) a medida que
+// avanza, sin construir el árbol ni el documento completo. La memoria de entrada queda en unas
+// decenas de KB más las claves abiertas y el número en curso.
+// Diferencia con JsonParser: una clave repetida en un objeto se emite cada vez (JsonParser
+// conserva solo el último valor en la posición de la primera aparición).
+public class JsonStreamConverter {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int FLUSH_THRESHOLD = 16 * 1024;
+    private static final int INITIAL_STACK = 32;
+
+    private final Reader in;
+    private final JsonReader.Limits limits;
+    private CancellationToken cancellation = new CancellationToken();
+
+    // Buffer de entrada: buffer[pos, limit) pendiente; 'consumed' caracteres ya descartados
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private long consumed;
+    private boolean eof;
+    private long valuesParsed;
+
+    private Writer sink;
+    private final StringBuilder out = new StringBuilder(FLUSH_THRESHOLD + 256);
+    private char[] flushBuffer;
+    // Reutilizado para claves y números
+    private final StringBuilder token = new StringBuilder();
+
+    // Pila explícita: tipo de contenedor, nivel de sus hijos, nombre de elemento (listas),
+    // clave pendiente (objetos) y etiqueta que lo cierra con su sangría
+    private boolean[] isMap = new boolean[INITIAL_STACK];
+    private int[] levels = new int[INITIAL_STACK];
+    private String[] itemNames = new String[INITIAL_STACK];
+    private String[] keys = new String[INITIAL_STACK];
+    private String[] closeTags = new String[INITIAL_STACK];
+    private int[] closeLevels = new int[INITIAL_STACK];
+    private int depth;
+
+    public JsonStreamConverter(Reader in) {
+        this(in, JsonReader.Limits.DEFAULT);
+    }
+
+    public JsonStreamConverter(Reader in, JsonReader.Limits limits) {
+        this.in = in;
+        this.limits = limits;
+    }
+
+    public JsonStreamConverter(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    public JsonStreamConverter(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), BUFFER_SIZE));
+    }
+
+    public void setCancellationToken(CancellationToken cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    public void cancel() {
+        cancellation.cancel();
+    }
+
+    // Caracteres de entrada consumidos hasta ahora
+    public long getPosition() {
+        return consumed + pos;
+    }
+
+    public long getValuesParsed() {
+        return valuesParsed;
+    }
+
+    // Escribir el documento XML completo en 'sink'; no cierra ni el Reader ni el Writer
+    public void convert(Writer sink) throws IOException {
+        this.sink = sink;
+        out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.append("<root>\n");
+        writeValues();
+        out.append("</root>");
+        flush();
+        sink.flush();
+    }
+
+    // Escribir solo el contenido de <root> (sin cabecera ni etiqueta raíz), para unir
+    // fragmentos convertidos por separado
+    public void convertBody(Writer sink) throws IOException {
+        this.sink = sink;
+        writeValues();
+        flush();
+        sink.flush();
+    }
+
+    // Mismo recorrido que JsonReader.parse(), emitiendo en lugar de construir valores
+    private void writeValues() throws IOException {
+        // Inicio de un valor
+        while (true) {
+            valuesParsed++;
+            skipWhitespace();
+
+            if (out.length() >= FLUSH_THRESHOLD) {
+                flush();
+            }
+
+            int c = peek();
+            if (c == '{' || c == '[') {
+                pos++;
+                openValue(true);
+                skipWhitespace();
+                boolean map = c == '{';
+                if (peek() == (map ? '}' : ']')) {
+                    pos++; // Contenedor vacío
+                    closeValue(true);
+                } else {
+                    push(map);
+                    if (!map || readKey()) continue;
+                    pop();
+                }
+            } else {
+                openValue(false);
+                writeScalar(c);
+                closeValue(false);
+            }
+
+            // Valor completo: cerrar los contenedores que terminen
+            while (true) {
+                if (depth == 0) {
+                    return;
+                }
+
+                boolean map = isMap[depth - 1];
+                skipWhitespace();
+                int next = peek();
+                if (next == ',') {
+                    pos++;
+                    if (!map || readKey()) break;
+                } else if (next == (map ? '}' : ']')) {
+                    pos++;
+                }
+
+                // Fin del contenedor (o entrada mal formada)
+                pop();
+            }
+        }
+    }
+
+    // Etiqueta de apertura del valor que empieza según su contenedor
+    private void openValue(boolean container) {
+        if (depth == 0) {
+            return;
+        }
+        int top = depth - 1;
+        String tag = isMap[top] ? keys[top] : itemNames[top];
+        XmlWriter.indent(out, levels[top]);
+        out.append('<').append(tag).append('>');
+        if (container) {
+            out.append('\n');
+        }
+    }
+
+    // Cierre de un escalar o de un contenedor vacío
+    private void closeValue(boolean container) {
+        if (depth == 0) {
+            return;
+        }
+        int top = depth - 1;
+        String tag = isMap[top] ? keys[top] : itemNames[top];
+        if (container) {
+            XmlWriter.indent(out, levels[top]);
+        }
+        out.append("</").append(tag).append(">\n");
+    }
+
+    private void writeScalar(int c) throws IOException {
+        if (c < 0) {
+            return; // Fin de la entrada: valor nulo
+        }
+        if (c == '"') {
+            writeString();
+        } else if (c == 't' || c == 'f') {
+            if (matches("true")) {
+                pos += 4;
+                out.append("true");
+            } else if (matches("false")) {
+                pos += 5;
+                out.append("false");
+            }
+        } else if (c == 'n') {
+            if (matches("null")) {
+                pos += 4;
+            }
+        } else {
+            writeNumber();
+        }
+    }
+
+    private boolean readKey() throws IOException {
+        skipWhitespace();
+        if (peek() != '"') {
+            return false;
+        }
+        token.setLength(0);
+        readString(token, null);
+        String key = XmlWriter.sanitizeTagName(token.toString());
+
+        skipWhitespace();
+        if (peek() != ':') {
+            return false;
+        }
+        pos++;
+
+        keys[depth - 1] = key;
+        return true;
+    }
+
+    private void push(boolean map) {
+        if (depth >= limits.getMaxDepth()) {
+            throw new JsonLimitException("Profundidad de anidación supera el máximo de " +
+                    limits.getMaxDepth() + " en la posición " + getPosition());
+        }
+
+        int parentLevel;
+        String closeTag;
+        int childLevel;
+        String itemName;
+        if (depth == 0) {
+            parentLevel = 0;
+            closeTag = null;
+            childLevel = 1;
+            itemName = map ? null : XmlWriter.toSingular("item");
+        } else {
+            int top = depth - 1;
+            parentLevel = levels[top];
+            if (isMap[top]) {
+                closeTag = keys[top];
+                childLevel = parentLevel + 1;
+                itemName = map ? null : XmlWriter.toSingular(closeTag);
+            } else {
+                closeTag = itemNames[top];
+                // Lista dentro de lista: un nivel más, como XmlWriter con nestedListStep = 1
+                childLevel = parentLevel + 1;
+                itemName = map ? null : "item";
+            }
+        }
+
+        if (depth == isMap.length) {
+            isMap = Arrays.copyOf(isMap, depth * 2);
+            levels = Arrays.copyOf(levels, depth * 2);
+            itemNames = Arrays.copyOf(itemNames, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+            closeTags = Arrays.copyOf(closeTags, depth * 2);
+            closeLevels = Arrays.copyOf(closeLevels, depth * 2);
+        }
+        isMap[depth] = map;
+        levels[depth] = childLevel;
+        itemNames[depth] = itemName;
+        keys[depth] = null;
+        closeTags[depth] = closeTag;
+        closeLevels[depth] = parentLevel;
+        depth++;
+    }
+
+    private void pop() {
+        depth--;
+        if (closeTags[depth] != null) {
+            XmlWriter.indent(out, closeLevels[depth]);
+            out.append("</").append(closeTags[depth]).append(">\n");
+        }
+        itemNames[depth] = null;
+        keys[depth] = null;
+        closeTags[depth] = null;
+    }
+
+    // Cadena de valor: se escapa directamente a la salida, sin importar su longitud
+    private void writeString() throws IOException {
+        readString(null, out);
+    }
+
+    // Decodificar una cadena (mismas reglas que JsonReader.parseString) hacia 'target' o,
+    // escapada para XML, hacia 'escaped'
+    private void readString(StringBuilder target, StringBuilder escaped) throws IOException {
+        int maxLength = limits.getMaxStringLength();
+        long length = 0;
+        pos++; // Saltar '"' inicial
+
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+
+            if (c == '"') {
+                pos++; // Saltar '"' final
+                return;
+            } else if (c == '\\') {
+                pos++;
+                if (pos < limit || fill()) {
+                    char escapedChar = buffer[pos];
+                    switch (escapedChar) {
+                        case 'n': c = '\n'; break;
+                        case 't': c = '\t'; break;
+                        case 'r': c = '\r'; break;
+                        default: c = escapedChar;
+                    }
+                    pos++;
+                    append(target, escaped, c);
+                    length++;
+                }
+            } else {
+                append(target, escaped, c);
+                length++;
+                pos++;
+            }
+
+            if (length > maxLength) {
+                throw new JsonLimitException("Cadena en la posición " + getPosition() +
+                        " supera el máximo de " + maxLength + " caracteres");
+            }
+            if (escaped != null && escaped.length() >= FLUSH_THRESHOLD) {
+                flush();
+            }
+        }
+    }
+
+    private static void append(StringBuilder target, StringBuilder escaped, char c) {
+        if (target != null) {
+            target.append(c);
+            return;
+        }
+        switch (c) {
+            case '&': escaped.append("&amp;"); break;
+            case '<': escaped.append("&lt;"); break;
+            case '>': escaped.append("&gt;"); break;
+            case '"': escaped.append("&quot;"); break;
+            case '\'': escaped.append("&apos;"); break;
+            default: escaped.append(c);
+        }
+    }
+
+    // Mismas reglas que JsonReader.parseNumber: el texto se normaliza a Long/Double
+    private void writeNumber() throws IOException {
+        token.setLength(0);
+        boolean decimal = false;
+
+        if (peek() == '-') {
+            token.append('-');
+            pos++;
+        }
+        readDigits();
+
+        if (peek() == '.') {
+            decimal = true;
+            token.append('.');
+            pos++;
+            readDigits();
+        }
+
+        // Exponente (1e5, 2.5E-3); si no lleva dígitos no forma parte del número
+        int e = peek();
+        if (token.length() > 0 && (e == 'e' || e == 'E') && ensure(3)) {
+            int sign = buffer[pos + 1];
+            int digitAt = (sign == '+' || sign == '-') ? 2 : 1;
+            if (Character.isDigit(buffer[pos + digitAt])) {
+                token.append(buffer, pos, digitAt);
+                pos += digitAt;
+                readDigits();
+                decimal = true;
+            }
+        } else if (token.length() > 0 && (e == 'e' || e == 'E') && ensure(2) &&
+                Character.isDigit(buffer[pos + 1])) {
+            // Exponente al final de la entrada
+            token.append(buffer[pos]);
+            pos++;
+            readDigits();
+            decimal = true;
+        }
+
+        String number = token.toString();
+        try {
+            out.append(decimal ? String.valueOf(Double.parseDouble(number)) : String.valueOf(Long.parseLong(number)));
+        } catch (NumberFormatException ex) {
+            XmlWriter.appendEscaped(out, number);
+        }
+    }
+
+    private void readDigits() throws IOException {
+        while ((pos < limit || fill()) && Character.isDigit(buffer[pos])) {
+            token.append(buffer[pos++]);
+            if (token.length() > limits.getMaxStringLength()) {
+                throw new JsonLimitException("Número en la posición " + getPosition() +
+                        " supera el máximo de " + limits.getMaxStringLength() + " caracteres");
+            }
+        }
+    }
+
+    private boolean matches(String literal) throws IOException {
+        if (!ensure(literal.length())) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (buffer[pos + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipWhitespace() throws IOException {
+        while ((pos < limit || fill()) && Character.isWhitespace(buffer[pos])) {
+            pos++;
+        }
+    }
+
+    private int peek() throws IOException {
+        return pos < limit || fill() ? buffer[pos] : -1;
+    }
+
+    // Buffer agotado: rellenarlo desde el principio
+    private boolean fill() throws IOException {
+        return ensure(1);
+    }
+
+    // Garantizar 'n' caracteres disponibles desde pos (salvo fin de la entrada)
+    private boolean ensure(int n) throws IOException {
+        if (limit - pos >= n) {
+            return true;
+        }
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            consumed += pos;
+            limit -= pos;
+            pos = 0;
+        }
+        while (limit < n && !eof) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+
+        cancellation.throwIfCancelled();
+        if (consumed + limit > limits.getMaxSize()) {
+            throw new JsonLimitException("Documento supera el máximo de " + limits.getMaxSize() + " caracteres");
+        }
+        return limit - pos >= n;
+    }
+
+    private void flush() throws IOException {
+        int length = out.length();
+        if (length == 0) {
+            return;
+        }
+        if (flushBuffer == null || flushBuffer.length < length) {
+            flushBuffer = new char[Math.max(length, FLUSH_THRESHOLD)];
+        }
+        out.getChars(0, length, flushBuffer, 0);
+        sink.write(flushBuffer, 0, length);
+        out.setLength(0);
+    }
+}
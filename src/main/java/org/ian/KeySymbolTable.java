@@ -0,0 +1,153 @@
+package org.ian;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Tabla de símbolos para claves de objetos: resuelve cada clave repetida a una única
+// instancia de String buscando directamente sobre el texto JSON o los bytes de una entrada
+// binaria (sin crear substrings).
+// No es thread-safe: se usa una por documento o se comparte entre parseos del mismo hilo.
+public class KeySymbolTable {
+
+    private static final int INITIAL_CAPACITY = 64;
+    // Tope de claves distintas; por encima se deja de internar para no crecer sin límite
+    private static final int MAX_SYMBOLS = 1 << 16;
+
+    private String[] symbols = new String[INITIAL_CAPACITY];
+    private int size;
+    private long hits;
+    private long misses;
+
+    // Buscar la clave source[start, end) cuyo hash (mismo algoritmo que String.hashCode) ya se calculó
+    public String lookup(String source, int start, int end, int hash) {
+        int length = end - start;
+        int mask = symbols.length - 1;
+        int index = spread(hash) & mask;
+
+        String candidate;
+        while ((candidate = symbols[index]) != null) {
+            if (candidate.length() == length && candidate.hashCode() == hash &&
+                    source.regionMatches(start, candidate, 0, length)) {
+                hits++;
+                return candidate;
+            }
+            index = (index + 1) & mask;
+        }
+
+        misses++;
+        String key = source.substring(start, end);
+        insert(key, index);
+        return key;
+    }
+
+    // Buscar la clave ASCII source[start, end) de una entrada binaria (CBOR, Smile); null si
+    // tiene bytes no ASCII, que hay que decodificar e internar con intern()
+    public String lookup(byte[] source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            byte b = source[i];
+            if (b < 0) {
+                return null;
+            }
+            hash = 31 * hash + b;
+        }
+
+        int length = end - start;
+        int mask = symbols.length - 1;
+        int index = spread(hash) & mask;
+
+        String candidate;
+        while ((candidate = symbols[index]) != null) {
+            if (candidate.length() == length && candidate.hashCode() == hash && matches(candidate, source, start)) {
+                hits++;
+                return candidate;
+            }
+            index = (index + 1) & mask;
+        }
+
+        misses++;
+        String key = new String(source, start, length, StandardCharsets.ISO_8859_1);
+        insert(key, index);
+        return key;
+    }
+
+    private static boolean matches(String candidate, byte[] source, int start) {
+        for (int i = 0; i < candidate.length(); i++) {
+            if (candidate.charAt(i) != source[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Internar una clave ya decodificada (claves con secuencias de escape)
+    public String intern(String key) {
+        int hash = key.hashCode();
+        int mask = symbols.length - 1;
+        int index = spread(hash) & mask;
+
+        String candidate;
+        while ((candidate = symbols[index]) != null) {
+            if (candidate.hashCode() == hash && candidate.equals(key)) {
+                hits++;
+                return candidate;
+            }
+            index = (index + 1) & mask;
+        }
+
+        misses++;
+        insert(key, index);
+        return key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void clear() {
+        Arrays.fill(symbols, null);
+        size = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    private void insert(String key, int index) {
+        if (size >= MAX_SYMBOLS) {
+            return;
+        }
+        symbols[index] = key;
+        size++;
+
+        // Factor de carga máximo 0.5
+        if (size * 2 > symbols.length) {
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        String[] old = symbols;
+        symbols = new String[old.length * 2];
+        int mask = symbols.length - 1;
+
+        for (String key : old) {
+            if (key == null) continue;
+            int index = spread(key.hashCode()) & mask;
+            while (symbols[index] != null) {
+                index = (index + 1) & mask;
+            }
+            symbols[index] = key;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
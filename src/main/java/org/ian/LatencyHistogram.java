@@ -0,0 +1,145 @@
+package org.ian;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Histograma log-lineal de latencias en nanosegundos: 32 sub-cubetas por potencia de dos
+// (error relativo < 3.2%), registro sin bloqueos desde varios hilos y fusionable
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, nanos)));
+    }
+
+    // Registrar el tiempo transcurrido desde startNanos (obtenido con System.nanoTime())
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.merge(this);
+        return copy;
+    }
+
+    // Copiar y poner a cero en un solo paso, para leer por intervalos sin perder muestras
+    public LatencyHistogram snapshotAndReset() {
+        LatencyHistogram snapshot = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.getAndSet(i, 0);
+            if (count != 0) {
+                snapshot.counts.set(i, count);
+            }
+        }
+        return snapshot;
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // Percentil (0-100) en nanosegundos; devuelve el límite superior de la cubeta
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return highestValueOf(i);
+            }
+        }
+        return getMax();
+    }
+
+    public long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    public double getMean() {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                total += count;
+                sum += (double) count * ((lowestValueOf(i) + highestValueOf(i)) / 2.0);
+            }
+        }
+        return total == 0 ? 0.0 : sum / total;
+    }
+
+    public long getP50() { return getPercentile(50.0); }
+    public long getP99() { return getPercentile(99.0); }
+    public long getP999() { return getPercentile(99.9); }
+
+    private static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BITS;
+        int top = (int) (value >>> shift); // entre SUB_COUNT y 2 * SUB_COUNT - 1
+        return (shift + 1) * SUB_COUNT + (top - SUB_COUNT);
+    }
+
+    private static long lowestValueOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long top = SUB_COUNT + (index % SUB_COUNT);
+        return top << shift;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long top = SUB_COUNT + (index % SUB_COUNT);
+        return ((top + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LatencyHistogram[n=%d, p50=%dus, p99=%dus, p999=%dus, max=%dus]",
+                getCount(),
+                TimeUnit.NANOSECONDS.toMicros(getP50()),
+                TimeUnit.NANOSECONDS.toMicros(getP99()),
+                TimeUnit.NANOSECONDS.toMicros(getP999()),
+                TimeUnit.NANOSECONDS.toMicros(getMax()));
+    }
+}
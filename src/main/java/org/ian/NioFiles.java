@@ -0,0 +1,146 @@
+package org.ian;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public final class NioFiles {
+
+    // Tamaño de los bloques que se leen/escriben en cada llamada al canal
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private NioFiles() {
+    }
+
+    // Leer un archivo UTF-8 por bloques, sin cargar un byte[] intermedio del tamaño del archivo
+    public static String readText(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Archivo demasiado grande: " + size + " bytes");
+            }
+
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+            StringBuilder text = new StringBuilder((int) size);
+            ByteBuffer bytes = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            CharBuffer chars = CharBuffer.allocate(BLOCK_SIZE);
+
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(bytes) < 0;
+                bytes.flip();
+                decode(decoder, bytes, chars, text, eof);
+                bytes.compact();
+            }
+
+            flushDecoder(decoder, chars, text);
+            return text.toString();
+        }
+    }
+
+    // Leer un stream UTF-8 completo (por ejemplo ya descomprimido) sin copias intermedias en bytes
+    public static String readText(InputStream in) throws IOException {
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[BLOCK_SIZE / 16];
+
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            text.append(buffer, 0, read);
+        }
+        return text.toString();
+    }
+
+    // Escribir texto en UTF-8 por bloques sobre un FileChannel
+    public static void writeText(Path path, CharSequence text) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+            ByteBuffer bytes = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            int length = text.length();
+
+            int start = 0;
+            do {
+                int end = Math.min(length, start + BLOCK_SIZE);
+                // No partir un par surrogado entre dos bloques
+                if (end < length && Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end++;
+                }
+
+                encode(encoder, CharBuffer.wrap(text, start, end), bytes, channel, end == length);
+                start = end;
+            } while (start < length);
+
+            while (true) {
+                CoderResult result = encoder.flush(bytes);
+                drain(bytes, channel);
+                if (result.isUnderflow()) break;
+            }
+        }
+    }
+
+    private static void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars,
+                               StringBuilder text, boolean eof) throws CharacterCodingException {
+        while (true) {
+            CoderResult result = decoder.decode(bytes, chars, eof);
+            chars.flip();
+            text.append(chars);
+            chars.clear();
+
+            if (result.isUnderflow()) break;
+            if (result.isError()) result.throwException();
+        }
+    }
+
+    private static void flushDecoder(CharsetDecoder decoder, CharBuffer chars, StringBuilder text) {
+        while (true) {
+            CoderResult result = decoder.flush(chars);
+            chars.flip();
+            text.append(chars);
+            chars.clear();
+            if (result.isUnderflow()) break;
+        }
+    }
+
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer bytes,
+                               FileChannel channel, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain(bytes, channel);
+                continue;
+            }
+            if (result.isError()) result.throwException();
+            break;
+        }
+    }
+
+    private static void drain(ByteBuffer bytes, FileChannel channel) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
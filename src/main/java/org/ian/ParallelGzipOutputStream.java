@@ -0,0 +1,124 @@
+package org.ian;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+// Compresión gzip por bloques en paralelo: cada bloque se comprime en el pool como un
+// miembro gzip independiente y los miembros se escriben en orden. La concatenación de
+// miembros es un gzip válido (GZIPInputStream y gunzip la leen completa).
+public class ParallelGzipOutputStream extends OutputStream {
+
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int DEFLATE_BUFFER = 64 * 1024;
+
+    private final OutputStream out;
+    private final ForkJoinPool pool;
+    // Bloques comprimiéndose a la vez; acota la memoria a ~maxInFlight * BLOCK_SIZE
+    private final int maxInFlight;
+
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final ConcurrentLinkedQueue<byte[]> freeBlocks = new ConcurrentLinkedQueue<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int count;
+    private boolean wroteMember;
+    private boolean closed;
+
+    public ParallelGzipOutputStream(OutputStream out, ForkJoinPool pool) {
+        this.out = out;
+        this.pool = pool;
+        this.maxInFlight = Math.max(2, pool.getParallelism() * 2);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == block.length) {
+            submitBlock();
+        }
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (count == block.length) {
+                submitBlock();
+            }
+            int chunk = Math.min(length, block.length - count);
+            System.arraycopy(data, offset, block, count, chunk);
+            count += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    // Solo vacía los miembros ya terminados; el bloque en curso sigue acumulando
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeOldest();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            if (count > 0 || !wroteMember && pending.isEmpty()) {
+                submitBlock();
+            }
+            while (!pending.isEmpty()) {
+                writeOldest();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] data = block;
+        int length = count;
+        pending.add(pool.submit(() -> compressMember(data, length)));
+
+        byte[] recycled = freeBlocks.poll();
+        block = recycled != null ? recycled : new byte[BLOCK_SIZE];
+        count = 0;
+
+        while (pending.size() > maxInFlight) {
+            writeOldest();
+        }
+    }
+
+    private void writeOldest() throws IOException {
+        try {
+            out.write(pending.poll().get());
+            wroteMember = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Compresión interrumpida");
+        } catch (ExecutionException e) {
+            throw new IOException("Error comprimiendo bloque", e.getCause());
+        }
+    }
+
+    private byte[] compressMember(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member, DEFLATE_BUFFER)) {
+            gzip.write(data, 0, length);
+        }
+        freeBlocks.offer(data);
+        return member.toByteArray();
+    }
+}
@@ -0,0 +1,75 @@
+package org.ian;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Un histograma de latencia por fase de la conversión
+public class PhaseHistograms {
+
+    public enum Phase {
+        VALIDATION,
+        PARSE,
+        CONVERSION,
+        ASSEMBLY,
+        FORK_JOIN_WAIT
+    }
+
+    private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+
+    public PhaseHistograms() {
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+    }
+
+    public void record(Phase phase, long nanos) {
+        histograms.get(phase).record(nanos);
+    }
+
+    public void recordSince(Phase phase, long startNanos) {
+        histograms.get(phase).recordSince(startNanos);
+    }
+
+    public LatencyHistogram get(Phase phase) {
+        return histograms.get(phase);
+    }
+
+    public void merge(PhaseHistograms other) {
+        for (Phase phase : Phase.values()) {
+            histograms.get(phase).merge(other.get(phase));
+        }
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    // Leer y reiniciar todas las fases (lectura por intervalos)
+    public PhaseHistograms snapshotAndReset() {
+        PhaseHistograms snapshot = new PhaseHistograms();
+        for (Phase phase : Phase.values()) {
+            snapshot.histograms.put(phase, histograms.get(phase).snapshotAndReset());
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("PhaseHistograms[");
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = histograms.get(phase);
+            if (histogram.getCount() == 0) continue;
+
+            if (sb.charAt(sb.length() - 1) != '[') sb.append(", ");
+            sb.append(String.format("%s(n=%d p50=%dus p99=%dus p999=%dus)",
+                    phase.name().toLowerCase(), histogram.getCount(),
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getP50()),
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getP99()),
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getP999())));
+        }
+        return sb.append(']').toString();
+    }
+}
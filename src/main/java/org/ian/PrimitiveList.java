@@ -0,0 +1,206 @@
+package org.ian;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+// Listas homogéneas sobre arrays primitivos. JsonReader las crea para los arrays JSON cuyos
+// elementos son todos enteros, todos decimales o todos booleanos; para el resto del código son
+// una List de solo lectura. Los emisores las reconocen y escriben los elementos por rangos de
+// índices sin crear un objeto por elemento.
+public abstract class PrimitiveList<E> extends AbstractList<E> implements RandomAccess {
+
+    // Elementos por bloque al emitir: cancelación, volcado y reparto entre hilos van por bloques
+    public static final int CHUNK = 1024;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    protected int size;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Escribir los elementos [from, to) como <itemName>valor</itemName> a nivel 'level'
+    public void appendItems(StringBuilder sb, int from, int to, int level, String itemName) {
+        String indent = XmlWriter.indent(level);
+        for (int i = from; i < to; i++) {
+            sb.append(indent).append('<').append(itemName).append('>');
+            appendValue(sb, i);
+            sb.append("</").append(itemName).append(">\n");
+        }
+    }
+
+    // Escribir los elementos [from, to) como una lista delimitada (perfil compacto); el
+    // separador ya viene escapado
+    public void appendDelimited(StringBuilder sb, int from, int to, String separator) {
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                sb.append(separator);
+            }
+            appendValue(sb, i);
+        }
+    }
+
+    // Mismo texto que String.valueOf(get(index)), escrito directamente en el buffer
+    abstract void appendValue(StringBuilder sb, int index);
+
+    // Ajustar la capacidad al tamaño final
+    abstract void trimToSize();
+
+    // Tamaño aproximado en el heap: la lista y su array
+    abstract long estimatedBytes();
+
+    private static int grow(int capacity) {
+        return capacity + (capacity >> 1) + 1;
+    }
+
+    // Enteros: mientras todos caben en un int se guardan en int[] y al primero que no cabe
+    // se pasa a long[]
+    public static final class Longs extends PrimitiveList<Long> {
+        private int[] ints = new int[INITIAL_CAPACITY];
+        private long[] longs;
+
+        public void addLong(long value) {
+            if (longs == null) {
+                if (value == (int) value) {
+                    if (size == ints.length) {
+                        ints = Arrays.copyOf(ints, grow(size));
+                    }
+                    ints[size++] = (int) value;
+                    return;
+                }
+                widen();
+            }
+            if (size == longs.length) {
+                longs = Arrays.copyOf(longs, grow(size));
+            }
+            longs[size++] = value;
+        }
+
+        public long getLong(int index) {
+            Objects.checkIndex(index, size);
+            return longs != null ? longs[index] : ints[index];
+        }
+
+        @Override
+        public Long get(int index) {
+            return getLong(index);
+        }
+
+        @Override
+        void appendValue(StringBuilder sb, int index) {
+            if (longs != null) {
+                sb.append(longs[index]);
+            } else {
+                sb.append(ints[index]);
+            }
+        }
+
+        @Override
+        void trimToSize() {
+            if (longs != null) {
+                longs = Arrays.copyOf(longs, size);
+            } else if (ints.length > size) {
+                ints = Arrays.copyOf(ints, size);
+            }
+        }
+
+        @Override
+        long estimatedBytes() {
+            return 40 + (longs != null ? 8L * longs.length : 4L * ints.length);
+        }
+
+        private void widen() {
+            longs = new long[Math.max(grow(size), INITIAL_CAPACITY)];
+            for (int i = 0; i < size; i++) {
+                longs[i] = ints[i];
+            }
+            ints = null;
+        }
+    }
+
+    public static final class Doubles extends PrimitiveList<Double> {
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        public void addDouble(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size++] = value;
+        }
+
+        public double getDouble(int index) {
+            Objects.checkIndex(index, size);
+            return values[index];
+        }
+
+        @Override
+        public Double get(int index) {
+            return getDouble(index);
+        }
+
+        @Override
+        void appendValue(StringBuilder sb, int index) {
+            sb.append(values[index]);
+        }
+
+        @Override
+        long estimatedBytes() {
+            return 40 + 8L * values.length;
+        }
+
+        @Override
+        void trimToSize() {
+            if (values.length > size) {
+                values = Arrays.copyOf(values, size);
+            }
+        }
+    }
+
+    // Booleanos: un bit por elemento
+    public static final class Booleans extends PrimitiveList<Boolean> {
+        private long[] words = new long[1];
+
+        public void addBoolean(boolean value) {
+            int word = size >>> 6;
+            if (word == words.length) {
+                words = Arrays.copyOf(words, grow(word));
+            }
+            if (value) {
+                words[word] |= 1L << size;
+            }
+            size++;
+        }
+
+        public boolean getBoolean(int index) {
+            Objects.checkIndex(index, size);
+            return (words[index >>> 6] & (1L << index)) != 0;
+        }
+
+        @Override
+        public Boolean get(int index) {
+            return getBoolean(index);
+        }
+
+        @Override
+        void appendValue(StringBuilder sb, int index) {
+            sb.append((words[index >>> 6] & (1L << index)) != 0);
+        }
+
+        @Override
+        void trimToSize() {
+            int used = (size + 63) >>> 6;
+            if (words.length > used) {
+                words = Arrays.copyOf(words, used);
+            }
+        }
+
+        @Override
+        long estimatedBytes() {
+            return 40 + 8L * words.length;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.ian;
+
+import java.util.*;
+
+// Proyección estilo JSONPath: conjunto de rutas que el parser evalúa mientras recorre el texto.
+// Los valores fuera de las rutas se saltan sin materializarlos; los seleccionados conservan la
+// estructura de sus ancestros. Sintaxis: $, .nombre, ['nombre'], [n], .* y [*].
+public final class Projection {
+
+    // Estado del autómata: hijos por nombre, por índice y comodín. Un nodo terminal selecciona
+    // el subárbol completo. Tras compilar, el comodín ya está fusionado en los hijos con nombre,
+    // de modo que avanzar es una sola búsqueda.
+    static final class Node {
+        private final Map<String, Node> names = new HashMap<>();
+        private final Map<Integer, Node> indices = new HashMap<>();
+        private Node wildcard;
+        private boolean terminal;
+
+        boolean isTerminal() {
+            return terminal;
+        }
+
+        Node step(String key) {
+            Node next = names.get(key);
+            return next != null ? next : wildcard;
+        }
+
+        Node step(int index) {
+            Node next = indices.isEmpty() ? null : indices.get(index);
+            return next != null ? next : wildcard;
+        }
+    }
+
+    private final List<String> paths;
+    private final Node root;
+
+    private Projection(List<String> paths, Node root) {
+        this.paths = paths;
+        this.root = root;
+    }
+
+    public static Projection compile(String... paths) {
+        return compile(Arrays.asList(paths));
+    }
+
+    public static Projection compile(Collection<String> paths) {
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("La proyección necesita al menos una ruta");
+        }
+
+        Node root = new Node();
+        for (String path : paths) {
+            Node node = root;
+            for (Object segment : parsePath(path)) {
+                node = child(node, segment);
+            }
+            node.terminal = true;
+        }
+        return new Projection(List.copyOf(paths), normalize(root));
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    Node root() {
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return "Projection" + paths;
+    }
+
+    // ========== COMPILACIÓN ==========
+
+    // Segmentos: String (nombre), Integer (índice) o WILDCARD
+    private static final Object WILDCARD = new Object();
+
+    private static List<Object> parsePath(String path) {
+        String p = path.trim();
+        if (!p.startsWith("$")) {
+            throw invalid(path, 0, "debe empezar por '$'");
+        }
+
+        List<Object> segments = new ArrayList<>();
+        int i = 1;
+        while (i < p.length()) {
+            char c = p.charAt(i);
+            if (c == '.') {
+                int start = ++i;
+                while (i < p.length() && p.charAt(i) != '.' && p.charAt(i) != '[') {
+                    i++;
+                }
+                String name = p.substring(start, i);
+                if (name.isEmpty()) {
+                    throw invalid(path, start, "nombre vacío");
+                }
+                segments.add(name.equals("*") ? WILDCARD : name);
+            } else if (c == '[') {
+                int close = p.indexOf(']', i);
+                if (close < 0) {
+                    throw invalid(path, i, "falta ']'");
+                }
+                segments.add(parseBracket(path, p.substring(i + 1, close).trim(), i));
+                i = close + 1;
+            } else {
+                throw invalid(path, i, "se esperaba '.' o '['");
+            }
+        }
+        return segments;
+    }
+
+    private static Object parseBracket(String path, String content, int position) {
+        if (content.equals("*")) {
+            return WILDCARD;
+        }
+        if (content.length() >= 2 && (content.charAt(0) == '\'' || content.charAt(0) == '"') &&
+                content.charAt(content.length() - 1) == content.charAt(0)) {
+            return content.substring(1, content.length() - 1);
+        }
+        try {
+            int index = Integer.parseInt(content);
+            if (index < 0) {
+                throw invalid(path, position, "índice negativo");
+            }
+            return index;
+        } catch (NumberFormatException e) {
+            throw invalid(path, position, "selector no válido '" + content + "'");
+        }
+    }
+
+    private static IllegalArgumentException invalid(String path, int position, String reason) {
+        return new IllegalArgumentException("Ruta '" + path + "' no válida en la posición " + position +
+                ": " + reason);
+    }
+
+    private static Node child(Node node, Object segment) {
+        if (segment == WILDCARD) {
+            if (node.wildcard == null) node.wildcard = new Node();
+            return node.wildcard;
+        }
+        if (segment instanceof Integer) {
+            return node.indices.computeIfAbsent((Integer) segment, k -> new Node());
+        }
+        return node.names.computeIfAbsent((String) segment, k -> new Node());
+    }
+
+    // Fusionar el comodín en los hijos con nombre/índice (construcción de subconjuntos)
+    private static Node normalize(Node node) {
+        if (node.terminal) {
+            // Se selecciona todo el subárbol: las rutas más largas no aportan nada
+            node.names.clear();
+            node.indices.clear();
+            node.wildcard = null;
+            return node;
+        }
+
+        Node wildcard = node.wildcard == null ? null : normalize(node.wildcard);
+        node.wildcard = wildcard;
+        if (wildcard != null) {
+            node.names.replaceAll((key, child) -> normalize(merge(child, wildcard)));
+            node.indices.replaceAll((key, child) -> normalize(merge(child, wildcard)));
+        } else {
+            node.names.replaceAll((key, child) -> normalize(child));
+            node.indices.replaceAll((key, child) -> normalize(child));
+        }
+        return node;
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+
+        Node merged = new Node();
+        merged.terminal = a.terminal || b.terminal;
+        merged.wildcard = merge(a.wildcard, b.wildcard);
+        a.names.forEach((key, child) -> merged.names.put(key, child));
+        b.names.forEach((key, child) -> merged.names.merge(key, child, Projection::merge));
+        a.indices.forEach((key, child) -> merged.indices.put(key, child));
+        b.indices.forEach((key, child) -> merged.indices.merge(key, child, Projection::merge));
+        return merged;
+    }
+}
@@ -0,0 +1,63 @@
+package org.ian;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// StringBuilder de trabajo reutilizables por hilo (incluidos los hilos del ForkJoinPool).
+// Se toman con acquire() y se devuelven con release() en el mismo hilo; los que crecen por
+// encima de MAX_RETAINED_CAPACITY se descartan para que un documento grande no deje memoria
+// retenida en cada hilo.
+public final class ScratchBuffers {
+
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final int MAX_POOLED = 16;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final ThreadLocal<ScratchBuffers> LOCAL = ThreadLocal.withInitial(ScratchBuffers::new);
+
+    private static final LongAdder acquired = new LongAdder();
+    private static final LongAdder reused = new LongAdder();
+
+    private final StringBuilder[] free = new StringBuilder[MAX_POOLED];
+    private int size;
+
+    private ScratchBuffers() {
+    }
+
+    public static StringBuilder acquire() {
+        acquired.increment();
+        ScratchBuffers local = LOCAL.get();
+        if (local.size > 0) {
+            reused.increment();
+            StringBuilder sb = local.free[--local.size];
+            local.free[local.size] = null;
+            return sb;
+        }
+        return new StringBuilder(INITIAL_CAPACITY);
+    }
+
+    public static void release(StringBuilder sb) {
+        if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+            return;
+        }
+        ScratchBuffers local = LOCAL.get();
+        if (local.size < MAX_POOLED) {
+            sb.setLength(0);
+            local.free[local.size++] = sb;
+        }
+    }
+
+    // Devolver el contenido y liberar el buffer en un solo paso
+    public static String toStringAndRelease(StringBuilder sb) {
+        String result = sb.toString();
+        release(sb);
+        return result;
+    }
+
+    public static long getAcquired() {
+        return acquired.sum();
+    }
+
+    public static long getReused() {
+        return reused.sum();
+    }
+}
@@ -0,0 +1,135 @@
+package org.ian;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Texto codificado en UTF-8 sobre una cadena de segmentos directos del pool. No es thread-safe:
+// cada tarea llena el suyo y el hilo que escribe los vuelca en orden con escrituras agrupadas.
+public class SegmentedBuffer {
+
+    private static final ByteBuffer[] NO_SEGMENTS = new ByteBuffer[0];
+
+    private final ByteBufferPool pool;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private ByteBuffer current;
+    // Surrogado alto al final de un append, pendiente de su pareja
+    private char pendingHigh;
+    private long size;
+
+    public SegmentedBuffer(ByteBufferPool pool) {
+        this.pool = pool;
+    }
+
+    public void append(CharSequence text) {
+        append(CharBuffer.wrap(text));
+    }
+
+    public void append(char[] text, int offset, int length) {
+        append(CharBuffer.wrap(text, offset, length));
+    }
+
+    private void append(CharBuffer chars) {
+        if (pendingHigh != 0 && chars.hasRemaining()) {
+            char[] pair = {pendingHigh, chars.get()};
+            pendingHigh = 0;
+            encode(CharBuffer.wrap(pair), false);
+        }
+        encode(chars, false);
+        if (chars.hasRemaining()) {
+            pendingHigh = chars.get();
+        }
+    }
+
+    // Terminar la codificación (surrogado suelto incluido); después solo queda escribir
+    public void finish() {
+        CharBuffer rest = pendingHigh != 0 ? CharBuffer.wrap(new char[]{pendingHigh}) : CharBuffer.allocate(0);
+        pendingHigh = 0;
+        encode(rest, true);
+
+        while (true) {
+            CoderResult result = encoder.flush(segment());
+            if (!result.isOverflow()) break;
+            nextSegment();
+        }
+        encoder.reset();
+    }
+
+    // Bytes codificados pendientes de escribir
+    public long size() {
+        return size + (current == null ? 0 : current.position());
+    }
+
+    // Volcar todos los segmentos con escrituras agrupadas y devolverlos al pool
+    public long writeTo(GatheringByteChannel channel) throws IOException {
+        if (current != null) {
+            segments.add(current);
+            current = null;
+        }
+        ByteBuffer[] buffers = segments.toArray(NO_SEGMENTS);
+        long total = 0;
+        for (ByteBuffer buffer : buffers) {
+            buffer.flip();
+            total += buffer.remaining();
+        }
+
+        try {
+            long written = 0;
+            while (written < total) {
+                written += channel.write(buffers);
+            }
+        } finally {
+            release();
+        }
+        return total;
+    }
+
+    // Devolver los segmentos al pool sin escribirlos
+    public void release() {
+        if (current != null) {
+            segments.add(current);
+            current = null;
+        }
+        for (ByteBuffer segment : segments) {
+            pool.release(segment);
+        }
+        segments.clear();
+        size = 0;
+    }
+
+    private void encode(CharBuffer chars, boolean endOfInput) {
+        while (true) {
+            CoderResult result = encoder.encode(chars, segment(), endOfInput);
+            if (result.isOverflow()) {
+                nextSegment();
+                continue;
+            }
+            // Con REPLACE no hay errores: underflow indica que se consumió la entrada
+            // (salvo un surrogado alto final si no es el fin de la entrada)
+            break;
+        }
+    }
+
+    private ByteBuffer segment() {
+        if (current == null) {
+            current = pool.acquire();
+        }
+        return current;
+    }
+
+    private void nextSegment() {
+        size += current.position();
+        segments.add(current);
+        current = pool.acquire();
+    }
+}
@@ -0,0 +1,74 @@
+package org.ian;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.GatheringByteChannel;
+
+// Writer que codifica en UTF-8 sobre segmentos directos y los vuelca al canal en bloques de
+// varios segmentos con una sola escritura agrupada. close() no cierra el canal.
+public class SegmentedWriter extends Writer {
+
+    // Segmentos que se acumulan antes de escribir
+    private static final int FLUSH_SEGMENTS = 4;
+
+    private final GatheringByteChannel channel;
+    private final SegmentedBuffer buffer;
+    private final long flushBytes;
+    private long written;
+    private boolean closed;
+
+    public SegmentedWriter(GatheringByteChannel channel, ByteBufferPool pool) {
+        this.channel = channel;
+        this.buffer = new SegmentedBuffer(pool);
+        this.flushBytes = (long) pool.getSegmentSize() * FLUSH_SEGMENTS;
+    }
+
+    @Override
+    public void write(char[] text, int offset, int length) throws IOException {
+        ensureOpen();
+        buffer.append(text, offset, length);
+        if (buffer.size() >= flushBytes) {
+            written += buffer.writeTo(channel);
+        }
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        ensureOpen();
+        buffer.append(text.subSequence(offset, offset + length));
+        if (buffer.size() >= flushBytes) {
+            written += buffer.writeTo(channel);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        written += buffer.writeTo(channel);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            buffer.finish();
+            written += buffer.writeTo(channel);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    // Bytes entregados al canal
+    public long getBytesWritten() {
+        return written;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("SegmentedWriter cerrado");
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package org.ian;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Planes de emisión para formas de objeto recurrentes: un objeto plano (solo valores escalares)
+// con un orden de claves fijo se emite con las etiquetas ya saneadas y construidas, sin pasar por
+// el despacho genérico. Si un documento se desvía de la forma se usa el camino genérico.
+// Es thread-safe: una instancia se comparte entre los hilos de un conversor.
+public class ShapeRegistry {
+
+    // Registro compartido por las instancias de JsonParser (una por documento); como vive lo que
+    // el proceso, al vuelo solo compila formas que se repiten (ver PROMOTE_AFTER)
+    public static final ShapeRegistry DEFAULT = new ShapeRegistry();
+
+    private static final int MAX_PLANS = 1024;
+    // Objetos más anchos no se compilan
+    private static final int MAX_KEYS = 64;
+    // Variantes de forma que comparten la primera clave
+    private static final int MAX_CANDIDATES = 8;
+
+    // Apariciones de una forma antes de compilarla al vuelo: los objetos sueltos (p. ej. con claves
+    // que elige quien envía el documento) no ocupan plan y el registro queda para las recurrentes
+    private static final int PROMOTE_AFTER = 8;
+    // Contadores de apariciones por hash de la forma; una colisión solo adelanta la compilación
+    private static final int SIGHTING_SLOTS = 4096;
+    // Cada tantos fallos sin plan se vacían los contadores, para que las apariciones aisladas no
+    // se acumulen durante toda la vida del proceso hasta parecer recurrentes
+    private static final int SIGHTING_WINDOW = 64 * 1024;
+
+    // Tipos de valor admitidos por un campo del plan
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte NUMBER = 2;
+    private static final byte BOOLEAN = 3;
+
+    // Plan inmutable de una forma: claves en orden, etiquetas de apertura/cierre y tipos
+    static final class ShapePlan {
+        private final String[] keys;
+        private final String[] openTags;
+        private final String[] closeTags;
+        private final byte[] kinds;
+
+        private ShapePlan(String[] keys, byte[] kinds) {
+            this.keys = keys;
+            this.kinds = kinds;
+            this.openTags = new String[keys.length];
+            this.closeTags = new String[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                String tag = XmlWriter.sanitizeTagName(keys[i]);
+                openTags[i] = "<" + tag + ">";
+                closeTags[i] = "</" + tag + ">\n";
+            }
+        }
+
+        // Mismas claves en el mismo orden y mismos tipos (null encaja en cualquier campo)
+        private boolean matches(Map<String, Object> map) {
+            if (map.size() != keys.length) {
+                return false;
+            }
+            int i = 0;
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                String key = entry.getKey();
+                if (key != keys[i] && !key.equals(keys[i])) {
+                    return false;
+                }
+                byte kind = kindOf(entry.getValue());
+                if (kind < 0 || (kind != NULL && kind != kinds[i] && kinds[i] != NULL)) {
+                    return false;
+                }
+                i++;
+            }
+            return true;
+        }
+
+        private void emit(StringBuilder out, Map<String, Object> map, int level) {
+            int i = 0;
+            for (Object value : map.values()) {
+                XmlWriter.indent(out, level);
+                out.append(openTags[i]);
+                if (value instanceof String) {
+                    XmlWriter.appendEscaped(out, (String) value);
+                } else if (value != null) {
+                    // Números y booleanos no contienen caracteres a escapar
+                    out.append(value);
+                }
+                out.append(closeTags[i]);
+                i++;
+            }
+        }
+
+        int size() {
+            return keys.length;
+        }
+    }
+
+    // Planes indexados por la primera clave del objeto
+    private final Map<String, ShapePlan[]> plans = new ConcurrentHashMap<>();
+    private final AtomicInteger planCount = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private volatile boolean learning = true;
+    private final AtomicIntegerArray sightings = new AtomicIntegerArray(SIGHTING_SLOTS);
+    private final AtomicInteger window = new AtomicInteger();
+
+    // Emitir los campos de 'map' con un plan; false si no hay plan aplicable (camino genérico)
+    public boolean emit(StringBuilder out, Map<String, Object> map, int level) {
+        int size = map.size();
+        if (size == 0 || size > MAX_KEYS) {
+            return false;
+        }
+
+        String firstKey = map.keySet().iterator().next();
+        ShapePlan[] candidates = plans.get(firstKey);
+        if (candidates != null) {
+            for (ShapePlan plan : candidates) {
+                if (plan.matches(map)) {
+                    plan.emit(out, map, level);
+                    hits.increment();
+                    return true;
+                }
+            }
+        }
+
+        fallbacks.increment();
+        if (learning && recurring(map)) {
+            compile(map);
+        }
+        return false;
+    }
+
+    // Anotar una aparición de la forma plana de 'map'; true si ya se ha visto PROMOTE_AFTER veces
+    // en la ventana actual
+    private boolean recurring(Map<String, Object> map) {
+        int hash = 1;
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            byte kind = kindOf(entry.getValue());
+            if (kind < 0) {
+                return false; // Objeto con hijos compuestos: nunca tendrá plan
+            }
+            hash = 31 * (31 * hash + entry.getKey().hashCode()) + kind;
+        }
+        if (window.incrementAndGet() >= SIGHTING_WINDOW) {
+            window.set(0);
+            resetSightings();
+        }
+        int slot = (hash ^ (hash >>> 16)) & (SIGHTING_SLOTS - 1);
+        return sightings.incrementAndGet(slot) >= PROMOTE_AFTER;
+    }
+
+    private void resetSightings() {
+        for (int i = 0; i < SIGHTING_SLOTS; i++) {
+            sightings.set(i, 0);
+        }
+    }
+
+    // Registrar las formas planas de un documento de ejemplo antes de convertir
+    @SuppressWarnings("unchecked")
+    public void learn(Object sample) {
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(sample);
+
+        while (!pending.isEmpty()) {
+            Object value = pending.pop();
+            if (value instanceof Map) {
+                Map<String, Object> map = (Map<String, Object>) value;
+                compile(map);
+                for (Object child : map.values()) {
+                    pending.push(child);
+                }
+            } else if (value instanceof List) {
+                for (Object child : (List<Object>) value) {
+                    pending.push(child);
+                }
+            }
+        }
+    }
+
+    // Registrar una forma a partir de un esquema: claves en orden y tipo de ejemplo de cada valor
+    public void register(String[] keys, Class<?>[] valueTypes) {
+        if (keys.length == 0 || keys.length > MAX_KEYS || keys.length != valueTypes.length) {
+            throw new IllegalArgumentException("Forma no válida: " + keys.length + " claves, " +
+                    valueTypes.length + " tipos");
+        }
+        byte[] kinds = new byte[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            kinds[i] = kindOf(valueTypes[i]);
+            if (kinds[i] < 0) {
+                throw new IllegalArgumentException("Tipo no escalar para la clave " + keys[i] + ": " +
+                        valueTypes[i].getName());
+            }
+        }
+        add(new ShapePlan(keys.clone(), kinds));
+    }
+
+    // Dejar de compilar formas nuevas (solo se usan las ya registradas)
+    public void setLearning(boolean learning) {
+        this.learning = learning;
+    }
+
+    public boolean isLearning() {
+        return learning;
+    }
+
+    public int getPlanCount() {
+        return planCount.get();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    public void clear() {
+        plans.clear();
+        planCount.set(0);
+        hits.reset();
+        fallbacks.reset();
+        window.set(0);
+        resetSightings();
+    }
+
+    private void compile(Map<String, Object> map) {
+        int size = map.size();
+        if (size == 0 || size > MAX_KEYS || planCount.get() >= MAX_PLANS) {
+            return;
+        }
+
+        String[] keys = new String[size];
+        byte[] kinds = new byte[size];
+        int i = 0;
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            byte kind = kindOf(entry.getValue());
+            if (kind < 0) {
+                return; // Objeto con hijos compuestos: no es plano
+            }
+            keys[i] = entry.getKey();
+            kinds[i] = kind;
+            i++;
+        }
+        add(new ShapePlan(keys, kinds));
+    }
+
+    private void add(ShapePlan plan) {
+        plans.compute(plan.keys[0], (key, current) -> {
+            if (current == null) {
+                planCount.incrementAndGet();
+                return new ShapePlan[]{plan};
+            }
+            for (ShapePlan existing : current) {
+                if (Arrays.equals(existing.keys, plan.keys) && Arrays.equals(existing.kinds, plan.kinds)) {
+                    return current;
+                }
+            }
+            if (current.length >= MAX_CANDIDATES) {
+                return current;
+            }
+            planCount.incrementAndGet();
+            ShapePlan[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = plan;
+            return extended;
+        });
+    }
+
+    // Tipo de un valor; -1 si es compuesto (Map/List) o desconocido
+    private static byte kindOf(Object value) {
+        if (value == null) return NULL;
+        return kindOf(value.getClass());
+    }
+
+    private static byte kindOf(Class<?> type) {
+        if (type == String.class) return STRING;
+        if (Number.class.isAssignableFrom(type)) return NUMBER;
+        if (type == Boolean.class) return BOOLEAN;
+        return -1;
+    }
+}
@@ -0,0 +1,403 @@
+package org.ian;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Conversión por shards de un archivo cuyo valor raíz es un array enorme. Un recorrido por
+// bytes localiza las comas de primer nivel y parte el array en rangos de tamaño parecido; cada
+// rango lo convierte un proceso ShardWorker (otra JVM local) que recibe la petición por stdin
+// y devuelve el XML por stdout. Cada resultado se vuelca a un archivo temporal y se añade a la
+// salida en orden, dentro de un único <root>, así que el documento es el mismo que daría
+// JsonStreamConverter con el archivo entero. Un trabajador que muere se reinicia y su shard se
+// repite, como mucho MAX_ATTEMPTS veces.
+//
+//   java -cp ... org.ian.ShardCoordinator --input grande.json --output grande.xml --workers 4
+public class ShardCoordinator {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int SCAN_BLOCK = 1 << 20;
+    private static final int SHARDS_PER_WORKER = 4;
+
+    private final Path input;
+    private final int workers;
+    private int shards;
+    private List<String> workerCommand;
+    private Path spoolDirectory;
+
+    private final AtomicInteger restarts = new AtomicInteger();
+    private final AtomicInteger retries = new AtomicInteger();
+
+    public ShardCoordinator(Path input, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Se necesita al menos un trabajador");
+        }
+        this.input = input;
+        this.workers = workers;
+        this.shards = workers * SHARDS_PER_WORKER;
+        this.workerCommand = defaultWorkerCommand();
+    }
+
+    // Más shards que trabajadores reparten mejor la carga si unos elementos son más caros
+    public void setShards(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Se necesita al menos un shard");
+        }
+        this.shards = shards;
+    }
+
+    // Orden que arranca un trabajador; solo tiene que hablar el protocolo de ShardWorker por
+    // stdin/stdout, así que puede ser otra JVM con otras opciones o un envoltorio
+    public void setWorkerCommand(List<String> workerCommand) {
+        this.workerCommand = List.copyOf(workerCommand);
+    }
+
+    // Directorio de los resultados parciales (por defecto el de la salida)
+    public void setSpoolDirectory(Path spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    public int getRestarts() {
+        return restarts.get();
+    }
+
+    public int getRetries() {
+        return retries.get();
+    }
+
+    // La misma JVM y el classpath de este proceso; con exec:java el classpath del sistema es
+    // el de Maven, así que va delante el directorio o jar del que se cargó ShardWorker
+    public static List<String> defaultWorkerCommand() {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+        try {
+            Path classes = Paths.get(ShardWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            classpath = classes + File.pathSeparator + classpath;
+        } catch (URISyntaxException | SecurityException | NullPointerException e) {
+            // Sin origen conocido: solo el classpath del sistema
+        }
+        return List.of(java, "-cp", classpath, ShardWorker.class.getName());
+    }
+
+    // Rango [start, end) de bytes con elementos consecutivos del array raíz
+    public static final class Shard {
+        private final int index;
+        private final long start;
+        private final long end;
+        private int attempts;
+
+        Shard(int index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+    }
+
+    // Recorrer el archivo una vez y cortar el array raíz en la coma de primer nivel más
+    // cercana a cada múltiplo de tamaño/count; las comas dentro de cadenas no cuentan
+    public static List<Shard> split(Path file, int count) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BLOCK);
+            List<Shard> shards = new ArrayList<>();
+
+            long position = 0;
+            long start = -1;
+            long nextTarget = 0;
+            int depth = 0;
+            boolean inString = false;
+            boolean escaped = false;
+
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    long at = position++;
+
+                    if (inString) {
+                        if (escaped) {
+                            escaped = false;
+                        } else if (b == '\\') {
+                            escaped = true;
+                        } else if (b == '"') {
+                            inString = false;
+                        }
+                        continue;
+                    }
+
+                    if (start < 0) {
+                        // Antes del array raíz solo puede haber espacios
+                        if (b == '[') {
+                            start = at + 1;
+                            depth = 1;
+                            nextTarget = start + Math.max(1, (size - start) / count);
+                        } else if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                            throw new IOException("El valor raíz no es un array JSON");
+                        }
+                        continue;
+                    }
+
+                    switch (b) {
+                        case '"' -> inString = true;
+                        case '[', '{' -> depth++;
+                        case ']', '}' -> {
+                            if (--depth == 0) {
+                                shards.add(new Shard(shards.size(), start, at));
+                                return shards;
+                            }
+                        }
+                        case ',' -> {
+                            if (depth == 1 && at >= nextTarget && shards.size() < count - 1) {
+                                shards.add(new Shard(shards.size(), start, at));
+                                start = at + 1;
+                                nextTarget = start + Math.max(1, (size - start) / (count - shards.size()));
+                            }
+                        }
+                        default -> {
+                        }
+                    }
+                }
+                buffer.clear();
+            }
+            throw new IOException(start < 0 ? "Archivo vacío" : "Array raíz sin cerrar");
+        }
+    }
+
+    // Convertir el archivo y escribir el documento completo en 'output'
+    public void convert(Path output) throws IOException {
+        List<Shard> plan = split(input, shards);
+        Path spool = spoolDirectory != null ? spoolDirectory : output.toAbsolutePath().getParent();
+
+        ConcurrentLinkedQueue<Shard> pending = new ConcurrentLinkedQueue<>(plan);
+        List<CompletableFuture<Path>> parts = new ArrayList<>(plan.size());
+        for (int i = 0; i < plan.size(); i++) {
+            parts.add(new CompletableFuture<>());
+        }
+
+        List<Driver> drivers = new ArrayList<>();
+        for (int i = 0; i < Math.min(workers, plan.size()); i++) {
+            Driver driver = new Driver(pending, parts, spool);
+            drivers.add(driver);
+            Thread thread = new Thread(driver, "shard-driver-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root>\n");
+
+            // Añadir cada parte en cuanto están listas ella y las anteriores
+            for (CompletableFuture<Path> future : parts) {
+                Path part;
+                try {
+                    part = future.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long copied = 0;
+                    while (copied < size) {
+                        copied += in.transferTo(copied, size - copied, out);
+                    }
+                }
+                Files.delete(part);
+            }
+
+            writeFully(out, "</root>");
+        } finally {
+            for (Driver driver : drivers) {
+                driver.stop();
+            }
+            for (CompletableFuture<Path> future : parts) {
+                future.cancel(false);
+                if (future.isDone() && !future.isCompletedExceptionally()) {
+                    Files.deleteIfExists(future.join());
+                }
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, String text) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    // Error que devuelve el propio trabajador (entrada mal formada): repetir no lo arregla
+    private static class ShardRejectedException extends IOException {
+        ShardRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    // Hilo del coordinador que atiende a un proceso trabajador: le pasa shards de la cola y
+    // vuelca sus respuestas; si el proceso muere lo reinicia y devuelve el shard a la cola
+    private final class Driver implements Runnable {
+        private final ConcurrentLinkedQueue<Shard> pending;
+        private final List<CompletableFuture<Path>> parts;
+        private final Path spool;
+        private final byte[] chunk = new byte[ShardWorker.CHUNK_SIZE];
+
+        private volatile boolean stopped;
+        private Process process;
+        private DataInputStream responses;
+        private Writer requests;
+
+        Driver(ConcurrentLinkedQueue<Shard> pending, List<CompletableFuture<Path>> parts, Path spool) {
+            this.pending = pending;
+            this.parts = parts;
+            this.spool = spool;
+        }
+
+        @Override
+        public void run() {
+            Shard shard;
+            while (!stopped && (shard = pending.poll()) != null) {
+                CompletableFuture<Path> part = parts.get(shard.index);
+                Path file = null;
+                try {
+                    file = Files.createTempFile(spool, "shard-" + shard.index + "-", ".part");
+                    convert(shard, file);
+                    if (!part.complete(file)) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (ShardRejectedException e) {
+                    deleteQuietly(file);
+                    part.completeExceptionally(new IOException("Shard " + shard.index + ": " + e.getMessage(), e));
+                } catch (IOException e) {
+                    deleteQuietly(file);
+                    destroy();
+                    if (++shard.attempts < MAX_ATTEMPTS && !stopped) {
+                        retries.incrementAndGet();
+                        pending.add(shard);
+                    } else {
+                        part.completeExceptionally(new IOException("Shard " + shard.index +
+                                " falló tras " + shard.attempts + " intentos", e));
+                    }
+                }
+            }
+            destroy();
+        }
+
+        private void convert(Shard shard, Path file) throws IOException {
+            if (process == null || !process.isAlive()) {
+                start();
+            }
+            requests.write(input.toAbsolutePath() + "\t" + shard.start + "\t" + shard.end + "\n");
+            requests.flush();
+
+            try (OutputStream out = Files.newOutputStream(file)) {
+                while (true) {
+                    int length = responses.readInt();
+                    if (length == ShardWorker.END_OF_SHARD) {
+                        return;
+                    }
+                    if (length == ShardWorker.SHARD_FAILED) {
+                        throw new ShardRejectedException(responses.readUTF());
+                    }
+                    if (length < 0 || length > chunk.length) {
+                        throw new IOException("Trama no válida del trabajador: " + length);
+                    }
+                    responses.readFully(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
+            }
+        }
+
+        private void start() throws IOException {
+            if (process != null) {
+                restarts.incrementAndGet();
+            }
+            process = new ProcessBuilder(workerCommand)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            responses = new DataInputStream(new BufferedInputStream(process.getInputStream(), chunk.length + 4));
+            requests = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+        }
+
+        private void destroy() {
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        }
+
+        void stop() {
+            stopped = true;
+            destroy();
+        }
+
+        private void deleteQuietly(Path file) {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                    // Se queda en el directorio temporal
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path input = null;
+        Path output = null;
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors());
+        int shards = 0;
+        try {
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--input": input = Paths.get(value); break;
+                    case "--output": output = Paths.get(value); break;
+                    case "--workers": workers = Integer.parseInt(value); break;
+                    case "--shards": shards = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+                }
+            }
+            if (input == null || output == null) {
+                throw new IllegalArgumentException("Faltan --input y --output");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Uso: ShardCoordinator --input archivo.json --output archivo.xml " +
+                    "[--workers n] [--shards n]");
+            System.exit(2);
+            return;
+        }
+
+        ShardCoordinator coordinator = new ShardCoordinator(input, workers);
+        if (shards > 0) {
+            coordinator.setShards(shards);
+        }
+        long start = System.nanoTime();
+        coordinator.convert(output);
+        System.out.printf("%s convertido en %d ms (%d trabajadores, %d reinicios)%n", input,
+                (System.nanoTime() - start) / 1_000_000, workers, coordinator.getRestarts());
+    }
+}
@@ -0,0 +1,137 @@
+package org.ian;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Proceso trabajador del modo por shards. Lee peticiones por stdin, una por línea:
+// "ruta\tinicio\tfin". Cada una es un rango de bytes con elementos consecutivos del array
+// raíz. Convierte el rango con JsonStreamConverter (memoria constante) y devuelve por stdout
+// el contenido XML de esos elementos en tramas: [int n][n bytes]... y un 0 final. Si la
+// conversión falla, devuelve -1 seguido del mensaje. stdout se reserva para las tramas.
+public class ShardWorker {
+
+    static final int END_OF_SHARD = 0;
+    static final int SHARD_FAILED = -1;
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        BufferedReader requests = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), CHUNK_SIZE + 4));
+
+        String line;
+        while ((line = requests.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            ChunkedOutputStream chunks = new ChunkedOutputStream(out);
+            try {
+                convertRange(Paths.get(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), chunks);
+                chunks.flush();
+                out.writeInt(END_OF_SHARD);
+            } catch (RuntimeException | IOException e) {
+                chunks.flush();
+                out.writeInt(SHARD_FAILED);
+                out.writeUTF(String.valueOf(e.getMessage()));
+            }
+            out.flush();
+        }
+    }
+
+    // Convertir los elementos del rango [start, end) como si fueran un array propio
+    public static void convertRange(Path file, long start, long end, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(start);
+            InputStream range = new SequenceInputStream(new SequenceInputStream(
+                    new ByteArrayInputStream(new byte[]{'['}),
+                    new BoundedInputStream(Channels.newInputStream(channel), end - start)),
+                    new ByteArrayInputStream(new byte[]{']'}));
+
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            new JsonStreamConverter(new BufferedInputStream(range, CHUNK_SIZE)).convertBody(writer);
+            writer.flush();
+        }
+    }
+
+    // Como mucho 'remaining' bytes del flujo subyacente
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+
+    // Tramas de hasta CHUNK_SIZE bytes precedidas de su longitud; close() no cierra el destino
+    static class ChunkedOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private int size;
+
+        ChunkedOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (size == chunk.length) {
+                flush();
+            }
+            chunk[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (size == chunk.length) {
+                    flush();
+                }
+                int n = Math.min(len, chunk.length - size);
+                System.arraycopy(b, off, chunk, size, n);
+                size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size > 0) {
+                out.writeInt(size);
+                out.write(chunk, 0, size);
+                size = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package org.ian;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+// Prueba de carga sostenida: varios hilos convierten documentos de un corpus local durante un
+// tiempo fijo, en bucle cerrado (cada hilo lanza la siguiente al terminar) o con un ritmo de
+// llegadas fijo. Cada intervalo registra rendimiento, percentiles de latencia, pausas de GC y
+// saturación de los pools, y al final escribe un informe JSON para comparar ejecuciones.
+//
+//   java -cp ... org.ian.SoakTest --corpus datos/ --duration 120 --concurrency 8 --rate 40 \
+//        --mode FORK_JOIN --pools 8 --report soak.json
+public class SoakTest {
+
+    public enum Mode {
+        SECUENCIAL, FORK_JOIN, PIPELINE, AUTO
+    }
+
+    // Llegadas pendientes como máximo con ritmo fijo; las que no caben se descartan y se cuentan
+    private static final int MAX_BACKLOG = 10_000;
+
+    public static class Config {
+        private Path corpus;
+        private int durationSeconds = 60;
+        private int concurrency = 4;
+        // Conversiones por segundo; 0 = bucle cerrado
+        private double rate;
+        private Mode mode = Mode.FORK_JOIN;
+        // ForkJoinPool distintos entre los que se reparten los hilos (1 = todos comparten uno)
+        private int pools = 1;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int intervalMillis = 1000;
+        private Path report = Paths.get("soak-report.json");
+
+        public static Config parse(String[] args) {
+            Config config = new Config();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--corpus": config.corpus = Paths.get(value); break;
+                    case "--duration": config.durationSeconds = Integer.parseInt(value); break;
+                    case "--concurrency": config.concurrency = Integer.parseInt(value); break;
+                    case "--rate": config.rate = Double.parseDouble(value); break;
+                    case "--mode": config.mode = Mode.valueOf(value.toUpperCase()); break;
+                    case "--pools": config.pools = Integer.parseInt(value); break;
+                    case "--parallelism": config.parallelism = Integer.parseInt(value); break;
+                    case "--interval-ms": config.intervalMillis = Integer.parseInt(value); break;
+                    case "--report": config.report = Paths.get(value); break;
+                    default: throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+                }
+            }
+            if (config.corpus == null) {
+                throw new IllegalArgumentException("Falta --corpus <directorio>");
+            }
+            if (config.concurrency < 1 || config.pools < 1 || config.parallelism < 1 ||
+                    config.durationSeconds < 1 || config.intervalMillis < 1 || config.rate < 0) {
+                throw new IllegalArgumentException("Valores fuera de rango");
+            }
+            return config;
+        }
+
+        JSONObject toJSON() {
+            return new JSONObject()
+                    .put("corpus", corpus.toString())
+                    .put("durationSeconds", durationSeconds)
+                    .put("concurrency", concurrency)
+                    .put("rate", rate)
+                    .put("mode", mode.name())
+                    .put("pools", mode == Mode.SECUENCIAL ? 0 : pools)
+                    .put("parallelism", parallelism)
+                    .put("intervalMillis", intervalMillis);
+        }
+    }
+
+    private final Config config;
+    private final List<String> documents;
+    private final List<ForkJoinPool> pools = new ArrayList<>();
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LatencyHistogram intervalLatencies = new LatencyHistogram();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder inputChars = new LongAdder();
+    private final LongAdder outputChars = new LongAdder();
+    private final AtomicInteger nextDocument = new AtomicInteger();
+    private final JSONArray intervals = new JSONArray();
+
+    private BlockingQueue<Long> arrivals;
+    private long startNanos;
+    private long lastSampleNanos;
+    private long lastCompleted;
+    private long[] lastGc;
+
+    public SoakTest(Config config) throws IOException {
+        this.config = config;
+        this.documents = loadCorpus(config.corpus);
+        if (documents.isEmpty()) {
+            throw new IOException("No hay documentos .json ni .json.gz en " + config.corpus);
+        }
+    }
+
+    // Documentos .json y .json.gz del directorio (o el archivo indicado), cargados en memoria
+    static List<String> loadCorpus(Path corpus) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(corpus)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(corpus, "*.{json,json.gz}")) {
+                stream.forEach(files::add);
+            }
+            Collections.sort(files);
+        } else {
+            files.add(corpus);
+        }
+
+        List<String> documents = new ArrayList<>();
+        for (Path file : files) {
+            try (InputStream in = CompressedStreams.decompress(Files.newInputStream(file))) {
+                documents.add(NioFiles.readText(in));
+            }
+        }
+        return documents;
+    }
+
+    public JSONObject run() throws InterruptedException {
+        for (int i = 0; config.mode != Mode.SECUENCIAL && i < config.pools; i++) {
+            pools.add(new ForkJoinPool(config.parallelism));
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(config.concurrency, daemonThreads("soak-worker"));
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(daemonThreads("soak-sampler"));
+        Thread generator = null;
+
+        startNanos = System.nanoTime();
+        lastSampleNanos = startNanos;
+        lastGc = gcTotals();
+        long[] gcStart = lastGc.clone();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+
+        if (config.rate > 0) {
+            arrivals = new ArrayBlockingQueue<>(MAX_BACKLOG);
+            generator = new Thread(() -> generateArrivals(endNanos), "soak-arrivals");
+            generator.setDaemon(true);
+            generator.start();
+        }
+        sampler.scheduleAtFixedRate(this::sample, config.intervalMillis, config.intervalMillis,
+                TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < config.concurrency; i++) {
+            Function<String, String> converter = converter(i);
+            workers.execute(() -> drive(converter, endNanos));
+        }
+
+        workers.shutdown();
+        workers.awaitTermination(config.durationSeconds + 60L, TimeUnit.SECONDS);
+        if (generator != null) {
+            generator.join();
+        }
+        sampler.shutdown();
+        sampler.awaitTermination(5, TimeUnit.SECONDS);
+        sample();
+        pools.forEach(ForkJoinPool::shutdown);
+
+        return report(System.nanoTime() - startNanos, gcStart);
+    }
+
+    // Un convertidor por hilo; los ForkJoin comparten los pools por turnos
+    private Function<String, String> converter(int worker) {
+        if (config.mode == Mode.SECUENCIAL) {
+            return json -> new JsonParser(json).toXML();
+        }
+        JsonParserForkJoin forkJoin = new JsonParserForkJoin(pools.get(worker % pools.size()));
+        switch (config.mode) {
+            case PIPELINE:
+                forkJoin.setPipelined(true);
+                return forkJoin::toXML;
+            case AUTO:
+                AutoConverter auto = new AutoConverter(forkJoin,
+                        AutoConverter.Calibration.load(AutoConverter.Calibration.DEFAULT_PATH));
+                return auto::toXML;
+            default:
+                return forkJoin::toXML;
+        }
+    }
+
+    // La latencia se mide desde la llegada programada, así que incluye la espera en la cola
+    // cuando el sistema no da abasto
+    private void drive(Function<String, String> converter, long endNanos) {
+        try {
+            while (System.nanoTime() < endNanos) {
+                long scheduled;
+                if (arrivals == null) {
+                    scheduled = System.nanoTime();
+                } else {
+                    Long arrival = arrivals.poll(Math.max(1, endNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (arrival == null) {
+                        continue;
+                    }
+                    scheduled = arrival;
+                }
+
+                String json = documents.get(Math.floorMod(nextDocument.getAndIncrement(), documents.size()));
+                try {
+                    String xml = converter.apply(json);
+                    inputChars.add(json.length());
+                    outputChars.add(xml.length());
+                    completed.increment();
+                } catch (RuntimeException e) {
+                    failed.increment();
+                }
+                long latency = System.nanoTime() - scheduled;
+                latencies.record(latency);
+                intervalLatencies.record(latency);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void generateArrivals(long endNanos) {
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / config.rate);
+        long next = startNanos;
+        while (next < endNanos) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            if (!arrivals.offer(next)) {
+                dropped.increment();
+            }
+            next += period;
+        }
+    }
+
+    // Muestra del intervalo: rendimiento, latencias, GC, heap y ocupación de los pools
+    private synchronized void sample() {
+        long now = System.nanoTime();
+        double seconds = (now - lastSampleNanos) / 1e9;
+        if (seconds <= 0) {
+            return;
+        }
+        long done = completed.sum();
+        long[] gc = gcTotals();
+        LatencyHistogram window = intervalLatencies.snapshotAndReset();
+
+        int parallelism = 0;
+        int active = 0;
+        long queuedTasks = 0;
+        long queuedSubmissions = 0;
+        for (ForkJoinPool pool : pools) {
+            parallelism += pool.getParallelism();
+            active += pool.getActiveThreadCount();
+            queuedTasks += pool.getQueuedTaskCount();
+            queuedSubmissions += pool.getQueuedSubmissionCount();
+        }
+
+        JSONObject sample = new JSONObject()
+                .put("elapsedSeconds", round((now - startNanos) / 1e9))
+                .put("completed", done - lastCompleted)
+                .put("throughput", round((done - lastCompleted) / seconds))
+                .put("latencyMillis", percentiles(window))
+                .put("gcCount", gc[0] - lastGc[0])
+                .put("gcMillis", gc[1] - lastGc[1])
+                .put("heapUsedMB", round(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1048576.0))
+                .put("poolActive", active)
+                .put("poolSaturation", parallelism == 0 ? 0 : round((double) active / parallelism))
+                .put("queuedTasks", queuedTasks)
+                .put("queuedSubmissions", queuedSubmissions)
+                .put("backlog", arrivals == null ? 0 : arrivals.size());
+        intervals.put(sample);
+
+        System.out.printf("[%6.1fs] %8.1f conv/s  p50=%.1f ms  p99=%.1f ms  gc=%d ms  pool=%d/%d  cola=%d%n",
+                (now - startNanos) / 1e9, (done - lastCompleted) / seconds,
+                window.getP50() / 1e6, window.getP99() / 1e6, gc[1] - lastGc[1],
+                active, parallelism, arrivals == null ? 0 : arrivals.size());
+
+        lastSampleNanos = now;
+        lastCompleted = done;
+        lastGc = gc;
+    }
+
+    private JSONObject report(long elapsedNanos, long[] gcStart) {
+        double seconds = elapsedNanos / 1e9;
+        long[] gc = gcTotals();
+
+        JSONArray collectors = new JSONArray();
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collectors.put(new JSONObject()
+                    .put("name", bean.getName())
+                    .put("count", bean.getCollectionCount())
+                    .put("millis", bean.getCollectionTime()));
+        }
+
+        JSONObject summary = new JSONObject()
+                .put("elapsedSeconds", round(seconds))
+                .put("completed", completed.sum())
+                .put("failed", failed.sum())
+                .put("dropped", dropped.sum())
+                .put("throughput", round(completed.sum() / seconds))
+                .put("inputMBPerSecond", round(inputChars.sum() / 1048576.0 / seconds))
+                .put("outputMBPerSecond", round(outputChars.sum() / 1048576.0 / seconds))
+                .put("latencyMillis", percentiles(latencies))
+                .put("gcCount", gc[0] - gcStart[0])
+                .put("gcMillis", gc[1] - gcStart[1])
+                .put("gcFraction", round((gc[1] - gcStart[1]) / 1000.0 / seconds));
+
+        return new JSONObject()
+                .put("timestamp", Instant.now().toString())
+                .put("javaVersion", System.getProperty("java.version"))
+                .put("availableProcessors", Runtime.getRuntime().availableProcessors())
+                .put("maxHeapMB", Runtime.getRuntime().maxMemory() / 1048576)
+                .put("documents", documents.size())
+                .put("config", config.toJSON())
+                .put("summary", summary)
+                .put("collectors", collectors)
+                .put("intervals", intervals);
+    }
+
+    private static JSONObject percentiles(LatencyHistogram histogram) {
+        return new JSONObject()
+                .put("count", histogram.getCount())
+                .put("mean", round(histogram.getMean() / 1e6))
+                .put("p50", round(histogram.getP50() / 1e6))
+                .put("p90", round(histogram.getPercentile(90.0) / 1e6))
+                .put("p99", round(histogram.getP99() / 1e6))
+                .put("p999", round(histogram.getP999() / 1e6))
+                .put("max", round(histogram.getMax() / 1e6));
+    }
+
+    // {colecciones, milisegundos} sumados de todos los recolectores
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+            millis += Math.max(0, bean.getCollectionTime());
+        }
+        return new long[]{count, millis};
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config;
+        try {
+            config = Config.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Uso: SoakTest --corpus <dir|archivo> [--duration s] [--concurrency n] " +
+                    "[--rate conv/s] [--mode SECUENCIAL|FORK_JOIN|PIPELINE|AUTO] [--pools n] " +
+                    "[--parallelism n] [--interval-ms ms] [--report archivo.json]");
+            System.exit(2);
+            return;
+        }
+
+        JSONObject report = new SoakTest(config).run();
+        NioFiles.writeText(config.report, report.toString(2));
+        System.out.println(report.getJSONObject("summary").toString(2));
+        System.out.println("Informe guardado en " + config.report);
+    }
+}
@@ -0,0 +1,377 @@
+package org.ian;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Memoización de subárboles repetidos (bloques de dirección, ajustes por defecto, entradas de
+// catálogo que se copian por todo el documento). Cada conversión abre una Session:
+// - al parsear, JsonReader le pasa cada contenedor completo con su hash estructural y la sesión
+//   lo sustituye por una instancia canónica si ya apareció uno igual (hash-consing). Como los
+//   hijos ya son canónicos, la comparación solo mira un nivel: claves, escalares y la identidad
+//   de los hijos compuestos;
+// - al emitir, el cuerpo XML de un subárbol que se repite se convierte una vez por nivel de
+//   indentación y nombre de elemento y las demás apariciones copian ese fragmento. El cuerpo
+//   no incluye la etiqueta propia, así que también sirve bajo otra clave.
+// Los fragmentos guardados ocupan como mucho maxChars caracteres entre todas las sesiones
+// abiertas; al llenarse se dejan de guardar (lo guardado sigue sirviendo) y se liberan al cerrar
+// la sesión. Es thread-safe: una instancia se comparte entre conversiones y hilos.
+public class SubtreeCache {
+
+    public static final long DEFAULT_MAX_CHARS = 8L * 1024 * 1024;
+
+    // Subárboles con menos caracteres de entrada se convierten más rápido que la búsqueda
+    private static final int MIN_SPAN = 64;
+    // Subárboles más grandes no se guardan enteros (sí sus hijos repetidos): acota también el
+    // buffer que XmlWriter retiene sin volcar mientras captura un cuerpo
+    private static final int MAX_SPAN = 64 * 1024;
+    // Contenedores distintos que recuerda una sesión; por encima los nuevos ya no se internan
+    private static final int MAX_NODES = 1 << 18;
+    // Si entre los primeros SAMPLE_NODES contenedores apenas se repite alguno que se pueda guardar,
+    // el documento no se beneficia y la sesión deja de internar (el parseo vuelve a su coste)
+    private static final int SAMPLE_NODES = 1 << 16;
+    private static final int MIN_SAMPLE_REPEATS = SAMPLE_NODES / 100;
+
+    private final long maxChars;
+    private final AtomicLong usedChars = new AtomicLong();
+
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder copiedChars = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    public SubtreeCache() {
+        this(DEFAULT_MAX_CHARS);
+    }
+
+    public SubtreeCache(long maxChars) {
+        if (maxChars < 0) {
+            throw new IllegalArgumentException("Tamaño máximo de la caché no válido: " + maxChars);
+        }
+        this.maxChars = maxChars;
+    }
+
+    // Estado de una conversión: los nodos canónicos solo valen para el árbol de ese documento
+    public Session open() {
+        return new Session();
+    }
+
+    public long getMaxChars() {
+        return maxChars;
+    }
+
+    // Caracteres de fragmentos guardados en las sesiones abiertas
+    public long getUsedChars() {
+        return usedChars.get();
+    }
+
+    // Subárboles que al parsear resultaron iguales a uno anterior y se compartieron
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public long getStored() {
+        return stored.sum();
+    }
+
+    // Fragmentos que no se guardaron por falta de espacio
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    // Caracteres de salida copiados de la caché en lugar de convertirse
+    public long getCopiedChars() {
+        return copiedChars.sum();
+    }
+
+    // Documentos en los que se dejó de internar por falta de repeticiones
+    public long getAbandoned() {
+        return abandoned.sum();
+    }
+
+    public void resetStatistics() {
+        duplicates.reset();
+        hits.reset();
+        misses.reset();
+        stored.reset();
+        rejected.reset();
+        copiedChars.reset();
+        abandoned.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SubtreeCache[duplicates=%d, hits=%d, misses=%d, hitRate=%.1f%%, stored=%d, " +
+                        "rejected=%d, abandoned=%d, usedChars=%d/%d]", getDuplicates(), getHits(), getMisses(),
+                getHitRate() * 100, getStored(), getRejected(), getAbandoned(), getUsedChars(), maxChars);
+    }
+
+    // Contenedor interno de una sesión: su hash estructural, los caracteres de entrada que ocupaba
+    // y los valores que contiene; 'repeats' cuenta las apariciones posteriores a la primera
+    private static final class Node {
+        final Object value;
+        final int hash;
+        final int span;
+        final long values;
+        int repeats;
+
+        Node(Object value, int hash, int span, long values) {
+            this.value = value;
+            this.hash = hash;
+            this.span = span;
+            this.values = values;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Node node && hash == node.hash && sameContainer(value, node.value);
+        }
+    }
+
+    // Clave de un cuerpo convertido: nodo canónico (por identidad), nivel de sus hijos y nombre
+    // de sus elementos (null en objetos)
+    private static final class BodyKey {
+        final Object node;
+        final int level;
+        final String itemName;
+
+        BodyKey(Object node, int level, String itemName) {
+            this.node = node;
+            this.level = level;
+            this.itemName = itemName;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(node) * 31 + level) * 31 + Objects.hashCode(itemName);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof BodyKey key && node == key.node && level == key.level
+                    && Objects.equals(itemName, key.itemName);
+        }
+    }
+
+    public final class Session implements AutoCloseable {
+        // Solo se modifican al parsear (un hilo); la emisión los lee después
+        private final Map<Node, Node> nodes = new HashMap<>();
+        private final Map<Object, Node> shared = new IdentityHashMap<>();
+        private final Map<BodyKey, String> fragments = new ConcurrentHashMap<>();
+        private final AtomicLong sessionChars = new AtomicLong();
+        private volatile boolean closed;
+        private boolean interning = true;
+        private int examined;
+        private int usefulRepeats;
+
+        private Session() {
+        }
+
+        // Contenedor completo al parsear, con su hash estructural: devuelve la instancia canónica
+        // igual a él (puede ser él mismo)
+        public Object intern(Object container, int hash, int span, long values) {
+            if (container instanceof PrimitiveList<?> primitives && primitives.size() > PrimitiveList.CHUNK) {
+                return container; // Compararlo costaría tanto como emitirlo
+            }
+            if (!interning) {
+                return container;
+            }
+            if (++examined == SAMPLE_NODES && usefulRepeats < MIN_SAMPLE_REPEATS) {
+                interning = false;
+                nodes.clear();
+                abandoned.increment();
+                return container;
+            }
+
+            Node probe = new Node(container, hash, span, values);
+            Node canonical = nodes.get(probe);
+            if (canonical == null) {
+                if (nodes.size() < MAX_NODES) {
+                    nodes.put(probe, probe);
+                }
+                return container;
+            }
+            if (canonical.repeats++ == 0) {
+                shared.put(canonical.value, canonical);
+            }
+            if (span >= MIN_SPAN) {
+                usefulRepeats++;
+            }
+            duplicates.increment();
+            return canonical.value;
+        }
+
+        // Cuerpo ya convertido de un subárbol repetido; null si no está guardado o no se repite
+        public String lookup(Object node, int level, String itemName) {
+            Node info = cacheable(node);
+            if (info == null) {
+                return null;
+            }
+            String body = fragments.get(new BodyKey(node, level, itemName));
+            boolean hit = body != null;
+            if (hit) {
+                hits.increment();
+                copiedChars.add(body.length());
+            } else {
+                misses.increment();
+            }
+            ConversionEvents.cacheAccess("subtrees", hit);
+            return body;
+        }
+
+        // Si conviene guardar el cuerpo de 'node' cuando termine de convertirse
+        public boolean shouldStore(Object node) {
+            return cacheable(node) != null && usedChars.get() < maxChars;
+        }
+
+        // Guardar out[from, to) como cuerpo de 'node'; se ignora si no se repite o no cabe
+        public void store(Object node, int level, String itemName, CharSequence out, int from, int to) {
+            if (!shouldStore(node)) {
+                return;
+            }
+            int length = to - from;
+            long used = usedChars.addAndGet(length);
+            if (used > maxChars || closed) {
+                usedChars.addAndGet(-length);
+                rejected.increment();
+                return;
+            }
+            if (fragments.putIfAbsent(new BodyKey(node, level, itemName), out.subSequence(from, to).toString()) == null) {
+                sessionChars.addAndGet(length);
+                stored.increment();
+            } else {
+                usedChars.addAndGet(-length); // Otro hilo lo convirtió a la vez
+            }
+        }
+
+        // Valores dentro de un subárbol repetido (para contabilizar los que se copian)
+        public long valueCount(Object node) {
+            Node info = shared.get(node);
+            return info == null ? 0 : info.values;
+        }
+
+        public int getSharedCount() {
+            return shared.size();
+        }
+
+        // Liberar los fragmentos de esta conversión
+        @Override
+        public void close() {
+            closed = true;
+            fragments.clear();
+            usedChars.addAndGet(-sessionChars.getAndSet(0));
+        }
+
+        private Node cacheable(Object node) {
+            Node info = shared.get(node);
+            return info != null && info.span >= MIN_SPAN && info.span <= MAX_SPAN ? info : null;
+        }
+    }
+
+    // ========== HASH ESTRUCTURAL E IGUALDAD DE UN NIVEL ==========
+
+    // JsonReader calcula el hash de cada contenedor según le añade hijos, sin volver a recorrerlo:
+    // parte de seed() y combina cada clave con el hash de su valor (el de un hijo compuesto es el
+    // que se calculó al completarlo). Contenedores iguales dan el mismo hash.
+    static int seed(boolean map) {
+        return map ? 1 : 2;
+    }
+
+    static int combine(int hash, String key, int valueHash) {
+        if (key != null) {
+            hash = 31 * hash + key.hashCode();
+        }
+        return 31 * hash + valueHash;
+    }
+
+    static int scalarHash(Object value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    // Hash de un contenedor que no se llenó valor a valor (vacío o array primitivo)
+    static int hashOf(Object container) {
+        if (container instanceof PrimitiveList<?> primitives) {
+            return primitives.size() > PrimitiveList.CHUNK ? primitives.size()
+                    : primitives.hashCode() ^ primitives.getClass().hashCode();
+        }
+        return seed(container instanceof Map);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean sameContainer(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a instanceof Map) {
+            if (!(b instanceof Map)) {
+                return false;
+            }
+            Map<String, Object> left = (Map<String, Object>) a;
+            Map<String, Object> right = (Map<String, Object>) b;
+            if (left.size() != right.size()) {
+                return false;
+            }
+            // Mismo orden de claves: el XML conserva el orden del documento
+            Iterator<Map.Entry<String, Object>> other = right.entrySet().iterator();
+            for (Map.Entry<String, Object> entry : left.entrySet()) {
+                Map.Entry<String, Object> next = other.next();
+                if (!entry.getKey().equals(next.getKey()) || !sameChild(entry.getValue(), next.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof PrimitiveList || b instanceof PrimitiveList) {
+            return a.getClass() == b.getClass() && a.equals(b);
+        }
+        if (!(b instanceof List)) {
+            return false;
+        }
+        List<Object> left = (List<Object>) a;
+        List<Object> right = (List<Object>) b;
+        int size = left.size();
+        if (size != right.size()) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (!sameChild(left.get(i), right.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Compuestos por identidad (canónicos); escalares por valor y tipo (1 y 1.0 se escriben distinto)
+    private static boolean sameChild(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a instanceof Map || a instanceof List) {
+            return false;
+        }
+        return a.getClass() == b.getClass() && a.equals(b);
+    }
+}
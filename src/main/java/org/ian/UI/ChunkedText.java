@@ -0,0 +1,82 @@
+package org.ian.UI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Texto formado por bloques inmutables que se van añadiendo al final: guarda los mismos String
+// que produce el emisor, sin copiarlos a un único buffer. charAt recuerda el último bloque
+// consultado, así que los recorridos secuenciales no buscan el bloque en cada carácter.
+// Se llena desde un solo hilo; una vez completo se puede leer desde varios (la caché de
+// charAt siempre se valida contra los desplazamientos).
+final class ChunkedText implements CharSequence {
+
+    private final List<String> chunks = new ArrayList<>();
+    // Posición inicial de cada bloque
+    private int[] offsets = new int[16];
+    private int length;
+    private int lastChunk;
+
+    void append(String chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        if (chunks.size() == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[chunks.size()] = length;
+        chunks.add(chunk);
+        length += chunk.length();
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Índice " + index + " fuera de [0, " + length + ")");
+        }
+        int chunk = chunkAt(index);
+        return chunks.get(chunk).charAt(index - offsets[chunk]);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Rango [" + start + ", " + end + ") fuera de [0, " + length + ")");
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        int position = start;
+        while (position < end) {
+            int chunk = chunkAt(position);
+            String text = chunks.get(chunk);
+            int from = position - offsets[chunk];
+            int to = Math.min(text.length(), from + (end - position));
+            sb.append(text, from, to);
+            position += to - from;
+        }
+        return sb;
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    private int chunkAt(int index) {
+        int count = chunks.size();
+        int last = lastChunk;
+        if (index >= offsets[last] && (last + 1 == count || index < offsets[last + 1])) {
+            return last;
+        }
+        int found = Arrays.binarySearch(offsets, 0, count, index);
+        if (found < 0) {
+            found = -found - 2;
+        }
+        lastChunk = found;
+        return found;
+    }
+}
@@ -0,0 +1,227 @@
+package org.ian.UI;
+
+import javax.swing.*;
+import javax.swing.text.DefaultCaret;
+import java.awt.*;
+import java.util.Arrays;
+
+// Visor paginado: solo mantiene en el JTextArea una ventana del resultado. También muestra una
+// salida que llega por partes (startStream): los bloques se acumulan sin tocar el JTextArea y un
+// Timer los vuelca como mucho cada UPDATE_INTERVAL_MS, con una sola inserción en el documento
+// para todo lo llegado desde la anterior.
+public class PagedOutputView extends JPanel {
+
+    // Caracteres aproximados por página (se ajusta al siguiente salto de línea)
+    private static final int PAGE_SIZE = 64 * 1024;
+    // Intervalo mínimo entre actualizaciones de la vista mientras llega salida
+    private static final int UPDATE_INTERVAL_MS = 100;
+
+    private static final Color BACKGROUND = new Color(0x242424);
+    private static final Font FONT = new Font("JetBrains Mono", Font.PLAIN, 12);
+
+    private final JTextArea textArea;
+    private final JButton previousButton;
+    private final JButton nextButton;
+    private final JLabel pageLabel;
+
+    private CharSequence content = "";
+    private int[] pageStarts = {0};
+    private int pageCount = 1;
+    private int currentPage;
+    // Fin de la parte de la página actual que ya está en el JTextArea
+    private int shownEnd;
+    // Flujo en curso (null si el contenido está completo) y si llegó algo desde el último volcado
+    private Stream stream;
+    private boolean dirty;
+    private final Timer updateTimer;
+
+    public PagedOutputView() {
+        super(new BorderLayout());
+        setOpaque(false);
+
+        textArea = new JTextArea();
+        textArea.setEditable(false);
+        textArea.setBackground(BACKGROUND);
+        textArea.setForeground(Color.WHITE);
+        textArea.setFont(FONT);
+        // Añadir texto no mueve el scroll de quien está leyendo
+        ((DefaultCaret) textArea.getCaret()).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+
+        previousButton = createButton("<");
+        nextButton = createButton(">");
+        pageLabel = new JLabel();
+        pageLabel.setForeground(Color.WHITE);
+        pageLabel.setFont(FONT);
+
+        previousButton.addActionListener(e -> showPage(currentPage - 1));
+        nextButton.addActionListener(e -> showPage(currentPage + 1));
+
+        JPanel navigation = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        navigation.setOpaque(false);
+        navigation.add(previousButton);
+        navigation.add(pageLabel);
+        navigation.add(nextButton);
+
+        add(new JScrollPane(textArea), BorderLayout.CENTER);
+        add(navigation, BorderLayout.SOUTH);
+
+        updateTimer = new Timer(UPDATE_INTERVAL_MS, e -> {
+            if (dirty) {
+                refresh();
+            }
+        });
+        updateTimer.setCoalesce(true);
+
+        showPage(0);
+    }
+
+    // Reemplazar el contenido; solo se copia al JTextArea la página visible
+    public void setContent(CharSequence content) {
+        endStream();
+        this.content = content == null ? "" : content;
+        resetPages();
+        extendPages();
+        showPage(0);
+    }
+
+    public void clear() {
+        setContent("");
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    // Empezar a mostrar una salida por partes; deja de aceptar bloques de un flujo anterior
+    public Stream startStream() {
+        endStream();
+        stream = new Stream();
+        content = stream.text;
+        resetPages();
+        showPage(0);
+        updateTimer.start();
+        return stream;
+    }
+
+    // Salida que llega por partes. Todos los métodos se llaman en el EDT; los de un flujo que
+    // ya no es el actual no hacen nada.
+    public final class Stream {
+        private final ChunkedText text = new ChunkedText();
+
+        public void append(String chunk) {
+            if (stream == this) {
+                text.append(chunk);
+                dirty = true;
+            }
+        }
+
+        // Texto completo, del que lo recibido por append es un prefijo (los últimos bloques
+        // publicados pueden llegar después de terminar la conversión)
+        public void finish(CharSequence complete) {
+            if (stream == this) {
+                content = complete;
+                endStream();
+                refresh();
+            }
+        }
+
+        // Dejar lo recibido hasta ahora (conversión cancelada o con error)
+        public void abort() {
+            if (stream == this) {
+                endStream();
+                refresh();
+            }
+        }
+    }
+
+    private void endStream() {
+        stream = null;
+        dirty = false;
+        updateTimer.stop();
+    }
+
+    // Volcar lo llegado desde la última vez: páginas nuevas y, si la página visible creció, el
+    // texto que le falta
+    private void refresh() {
+        dirty = false;
+        extendPages();
+        int end = pageEnd(currentPage);
+        if (end > shownEnd) {
+            textArea.append(content.subSequence(shownEnd, end).toString());
+            shownEnd = end;
+        }
+        updateNavigation();
+    }
+
+    private void showPage(int page) {
+        if (page < 0 || page >= pageCount) {
+            return;
+        }
+
+        currentPage = page;
+        int start = pageStarts[page];
+        shownEnd = pageEnd(page);
+
+        textArea.setText(content.subSequence(start, shownEnd).toString());
+        textArea.setCaretPosition(0);
+        updateNavigation();
+    }
+
+    private void updateNavigation() {
+        pageLabel.setText("Página " + (currentPage + 1) + "/" + pageCount + (stream != null ? "+" : ""));
+        previousButton.setEnabled(currentPage > 0);
+        nextButton.setEnabled(currentPage + 1 < pageCount);
+    }
+
+    // Mientras llega salida la última página se muestra hasta PAGE_SIZE, que es donde empieza a
+    // buscarse su corte: lo ya mostrado nunca queda detrás del corte que se encuentre después
+    private int pageEnd(int page) {
+        if (page + 1 < pageCount) {
+            return pageStarts[page + 1];
+        }
+        int length = content.length();
+        return stream != null ? Math.min(length, pageStarts[page] + PAGE_SIZE) : length;
+    }
+
+    private void resetPages() {
+        pageStarts = new int[16];
+        pageCount = 1;
+        currentPage = 0;
+        shownEnd = 0;
+    }
+
+    // Buscar los cortes de página a partir del último conocido
+    private void extendPages() {
+        CharSequence text = content;
+        int length = text.length();
+        int pos = pageStarts[pageCount - 1];
+
+        while (pos + PAGE_SIZE < length) {
+            int next = pos + PAGE_SIZE;
+            // Cortar en el siguiente salto de línea para no partir etiquetas; en una salida sin
+            // saltos (perfil compacto) se corta a las dos páginas
+            int limit = Math.min(length, next + PAGE_SIZE);
+            while (next < limit && text.charAt(next - 1) != '\n') {
+                next++;
+            }
+            // Sin corte antes del final: es la última página (o, mientras llega salida, aún no
+            // se sabe dónde cae el corte)
+            if (next >= length) break;
+
+            if (pageCount == pageStarts.length) {
+                pageStarts = Arrays.copyOf(pageStarts, pageStarts.length * 2);
+            }
+            pageStarts[pageCount++] = next;
+            pos = next;
+        }
+    }
+
+    private static JButton createButton(String text) {
+        JButton button = new JButton(text);
+        button.setFocusPainted(false);
+        button.setContentAreaFilled(false);
+        button.setForeground(Color.WHITE);
+        button.setFont(FONT);
+        return button;
+    }
+}
@@ -1,12 +1,23 @@
 package org.ian.UI;
 
+import org.ian.AllocationTracker;
+import org.ian.AutoConverter;
 import org.ian.JsonParser;
 import org.ian.JsonParserForkJoin;
+import org.ian.NioFiles;
+import org.ian.PhaseHistograms;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class XML_JSON extends JFrame{
     private JPanel JPMain;
@@ -26,18 +37,48 @@ public class XML_JSON extends JFrame{
     private JLabel JLPoolActive;
     private JLabel JLPoolRunning;
     private JLabel JLPoolSteals;
-
-    private String xml;
+    private JButton JBOpen;
+    private JButton JBSave;
+    private PagedOutputView outputView;
+    private JButton JBCancel;
+    private JLabel JLConcurrentBytes;
+    private JButton JBAuto;
+    private JLabel JLAutoDecision;
+    private JLabel JLNormalMemory;
+    private JLabel JLConcurrentMemory;
+
+    // Entradas más grandes que esto solo se muestran como vista previa
+    private static final int PREVIEW_LIMIT = 256 * 1024;
+    // Resultados más grandes que esto se guardan en archivo en lugar de copiarse
+    private static final int CLIPBOARD_LIMIT = 1_000_000;
+    // Caracteres de XML que se acumulan antes de publicarlos a la vista
+    private static final int PUBLISH_CHUNK = 64 * 1024;
+
+    // Resultado completo de la última conversión (los mismos bloques que recibió la vista)
+    private CharSequence xml;
+    // Contenido completo de un archivo grande cargado (null si se usa el JTextArea)
+    private String loadedJson;
+    // Acción que cancela la conversión en curso (null si no hay ninguna)
+    private Runnable cancelAction;
     private JsonParser jp;
 
     private JsonParserForkJoin jpFJ;
 
+    // Reglas del modo automático (calibración guardada o valores por defecto)
+    private final AutoConverter.Calibration autoCalibration =
+            AutoConverter.Calibration.load(AutoConverter.Calibration.DEFAULT_PATH);
+
 
     private Timer monitoringTimer;
     private long normalStartTime;
     private long normalEndTime;
     private long concurrentStartTime;
     private long concurrentEndTime;
+    private long normalAllocated;
+
+    // Latencias por fase acumuladas durante la sesión (se muestran como tooltip de los tiempos)
+    private final PhaseHistograms normalPhases = new PhaseHistograms();
+    private final PhaseHistograms concurrentPhases = new PhaseHistograms();
 
 
     public XML_JSON() throws HeadlessException {
@@ -53,12 +94,139 @@ public class XML_JSON extends JFrame{
     private void setupListeners() {
         JBConvertion.addActionListener(e -> convertNormal());
         JBConcurrentConvertion.addActionListener(e -> convertConcurrent());
+        JBAuto.addActionListener(e -> convertAuto());
         JBCopy.addActionListener(e -> copyToClipboard());
+        JBOpen.addActionListener(e -> openFile());
+        JBSave.addActionListener(e -> saveToFile());
+        JBCancel.addActionListener(e -> cancelConversion());
+    }
+
+    private void cancelConversion() {
+        if (cancelAction != null) {
+            cancelAction.run();
+            JBCancel.setEnabled(false);
+            showMessage("Cancelando...");
+        }
+    }
+
+    private void startCancellable(Runnable action) {
+        cancelAction = action;
+        JBCancel.setEnabled(true);
+    }
+
+    private void endCancellable() {
+        cancelAction = null;
+        JBCancel.setEnabled(false);
+    }
+
+    private static boolean isCancellation(Exception ex) {
+        return ex instanceof CancellationException ||
+                (ex instanceof ExecutionException && ex.getCause() instanceof CancellationException);
+    }
+
+    // Obtener la entrada una sola vez por conversión
+    private String currentInput() {
+        return loadedJson != null ? loadedJson : JTAJson.getText();
+    }
+
+    private void setBusy(boolean busy) {
+        JBConvertion.setEnabled(!busy);
+        JBConcurrentConvertion.setEnabled(!busy);
+        JBAuto.setEnabled(!busy);
+        JBOpen.setEnabled(!busy);
+    }
+
+    private void openFile() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        Path path = chooser.getSelectedFile().toPath();
+        setBusy(true);
+        showMessage("Cargando " + path.getFileName() + "...");
+
+        // Leer en segundo plano para no congelar la UI
+        SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() throws Exception {
+                return NioFiles.readText(path);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    String text = get();
+                    if (text.length() <= PREVIEW_LIMIT) {
+                        loadedJson = null;
+                        JTAJson.setEditable(true);
+                        JTAJson.setText(text);
+                    } else {
+                        loadedJson = text;
+                        JTAJson.setEditable(false);
+                        JTAJson.setText(text.substring(0, PREVIEW_LIMIT) +
+                                "\n... (vista previa, " + text.length() + " caracteres)");
+                    }
+                    JTAJson.setCaretPosition(0);
+                    showMessage("Archivo cargado");
+                } catch (Exception ex) {
+                    showMessage("Error al leer: " + ex.getMessage());
+                } finally {
+                    setBusy(false);
+                }
+            }
+        };
+
+        worker.execute();
+    }
+
+    private void saveToFile() {
+        if (xml == null) {
+            return;
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        Path path = chooser.getSelectedFile().toPath();
+        CharSequence content = xml;
+        JBSave.setEnabled(false);
+        showMessage("Guardando...");
+
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                NioFiles.writeText(path, content);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    showMessage("Guardado en " + path.getFileName());
+                } catch (Exception ex) {
+                    showMessage("Error al guardar: " + ex.getMessage());
+                } finally {
+                    JBSave.setEnabled(true);
+                }
+            }
+        };
+
+        worker.execute();
     }
 
     private void copyToClipboard(){
+        if (xml != null && xml.length() > CLIPBOARD_LIMIT) {
+            showMessage("Resultado demasiado grande para copiar, guárdelo en archivo");
+            saveToFile();
+            return;
+        }
+
         try {
-            StringSelection seleccion = new StringSelection(xml);
+            StringSelection seleccion = new StringSelection(xml.toString());
             Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
             clipboard.setContents(seleccion, null);
             showMessage("Copiado");
@@ -68,50 +236,59 @@ public class XML_JSON extends JFrame{
     }
 
     private void convertConcurrent() {
-        if (!JsonParser.validateJSON(this.JTAJson.getText())) {
+        String json = currentInput();
+        if (!JsonParser.validateJSON(json, concurrentPhases)) {
             showMessage("JSON inválido o vacío");
             return;
         }
 
-        JBConvertion.setEnabled(false);
-        JBConcurrentConvertion.setEnabled(false);
+        setBusy(true);
 
         // Resetear estadísticas
         resetConcurrentStats();
 
-        // Ejecutar en hilo separado
-        SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+        jpFJ = new JsonParserForkJoin();
+        startCancellable(jpFJ::cancel);
+        clearResult();
+
+        // Ejecutar en hilo separado; los fragmentos se muestran en orden según se escriben
+        OutputWorker worker = new OutputWorker() {
             @Override
-            protected String doInBackground() throws Exception {
-                jpFJ = new JsonParserForkJoin();
-                concurrentStartTime = System.currentTimeMillis();
+            protected void convert(Writer out) throws IOException {
+                concurrentStartTime = System.nanoTime();
 
                 // Iniciar monitoreo en tiempo real
                 startMonitoring();
 
-                String result = jpFJ.toXML(JTAJson.getText());
-                concurrentEndTime = System.currentTimeMillis();
-
-                return result;
+                jpFJ.writeXML(json, out);
+                concurrentEndTime = System.nanoTime();
             }
 
             @Override
             protected void done() {
                 try {
-                    xml = get();
+                    xml = finishOutput();
                     stopMonitoring();
 
                     // Actualizar estadísticas finales
                     updateConcurrentStats(true);
+                    concurrentPhases.merge(jpFJ.getMonitor().getPhaseHistograms());
+                    JLConcurrentTime.setToolTipText(concurrentPhases.toString());
 
+                    showResult();
                     showMessage("XML listo (Concurrente)");
-                    JBCopy.setEnabled(true);
                 } catch (Exception ex) {
                     stopMonitoring();
-                    showMessage("Error en conversión: " + ex.getMessage());
+                    abortOutput();
+                    if (isCancellation(ex)) {
+                        updateConcurrentStats(false);
+                        showMessage("Conversión cancelada");
+                    } else {
+                        showMessage("Error en conversión: " + ex.getMessage());
+                    }
                 } finally {
-                    JBConvertion.setEnabled(true);
-                    JBConcurrentConvertion.setEnabled(true);
+                    setBusy(false);
+                    endCancellable();
                     if (jpFJ != null) {
                         jpFJ.shutdown();
                     }
@@ -121,48 +298,132 @@ public class XML_JSON extends JFrame{
 
         worker.execute();
     }
+    // Elegir secuencial o ForkJoin según el documento y mostrar la decisión
+    private void convertAuto() {
+        String json = currentInput();
+        if (!JsonParser.validateJSON(json, concurrentPhases)) {
+            showMessage("JSON inválido o vacío");
+            return;
+        }
+
+        setBusy(true);
+        resetConcurrentStats();
+        JLAutoDecision.setText("Auto: decidiendo...");
+        JLAutoDecision.setToolTipText(null);
+
+        jpFJ = new JsonParserForkJoin();
+        AutoConverter auto = new AutoConverter(jpFJ, autoCalibration);
+        startCancellable(auto::cancel);
+        clearResult();
+
+        OutputWorker worker = new OutputWorker() {
+            @Override
+            protected void convert(Writer out) throws IOException {
+                concurrentStartTime = System.nanoTime();
+                startMonitoring();
+                auto.writeXML(json, out);
+                concurrentEndTime = System.nanoTime();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    xml = finishOutput();
+                    stopMonitoring();
+
+                    AutoConverter.Decision decision = auto.getLastDecision();
+                    long duration = TimeUnit.NANOSECONDS.toMillis(concurrentEndTime - concurrentStartTime);
+                    if (decision.getMode() == AutoConverter.Mode.FORK_JOIN) {
+                        updateConcurrentStats(true);
+                    }
+                    JLAutoDecision.setText("Auto: " + decision.getMode() + " - " + decision.getReason() +
+                            " (" + duration + " ms)");
+                    JLAutoDecision.setToolTipText(decision.toString());
+
+                    showResult();
+                    showMessage("XML listo (Auto)");
+                } catch (Exception ex) {
+                    stopMonitoring();
+                    abortOutput();
+                    JLAutoDecision.setText("Auto: -");
+                    if (isCancellation(ex)) {
+                        showMessage("Conversión cancelada");
+                    } else {
+                        showMessage("Error en conversión: " + ex.getMessage());
+                    }
+                } finally {
+                    setBusy(false);
+                    endCancellable();
+                    auto.shutdown();
+                }
+            }
+        };
+
+        worker.execute();
+    }
+
     private void convertNormal() {
-        if (!JsonParser.validateJSON(this.JTAJson.getText())) {
+        String json = currentInput();
+        if (!JsonParser.validateJSON(json, normalPhases)) {
             showMessage("JSON inválido o vacío");
             return;
         }
 
-        JBConvertion.setEnabled(false);
-        JBConcurrentConvertion.setEnabled(false);
+        setBusy(true);
 
         JLNormalStatus.setText("Estado: Ejecutando...");
         JLNormalStatus.setForeground(Color.ORANGE);
 
-        // Ejecutar en hilo separado para no bloquear UI
-        SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+        jp = new JsonParser(json);
+        jp.setPhaseHistograms(normalPhases);
+        startCancellable(jp::cancel);
+        clearResult();
+
+        // Ejecutar en hilo separado para no bloquear UI; el XML se muestra por bloques según
+        // lo escribe el emisor
+        OutputWorker worker = new OutputWorker() {
             @Override
-            protected String doInBackground() throws Exception {
-                normalStartTime = System.currentTimeMillis();
-                jp = new JsonParser(JTAJson.getText());
-                String result = jp.toXML();
-                normalEndTime = System.currentTimeMillis();
-                return result;
+            protected void convert(Writer out) throws IOException {
+                normalStartTime = System.nanoTime();
+                long allocation = AllocationTracker.begin();
+                try {
+                    jp.writeXML(out);
+                } finally {
+                    normalAllocated = AllocationTracker.end(allocation);
+                    normalEndTime = System.nanoTime();
+                }
             }
 
             @Override
             protected void done() {
                 try {
-                    xml = get();
-                    long duration = normalEndTime - normalStartTime;
+                    xml = finishOutput();
+                    long duration = TimeUnit.NANOSECONDS.toMillis(normalEndTime - normalStartTime);
 
                     JLNormalStatus.setText("Estado: Completado");
                     JLNormalStatus.setForeground(new Color(0, 128, 0));
                     JLNormalTime.setText("Tiempo: " + duration + " ms");
+                    JLNormalTime.setToolTipText(normalPhases.toString());
+                    JLNormalMemory.setText(AllocationTracker.isSupported()
+                            ? "Memoria: asignado " + megabytes(normalAllocated) + " | XML " + megabytes(xml.length())
+                            : "Memoria: XML " + megabytes(xml.length()));
 
+                    showResult();
                     showMessage("XML listo (Normal)");
-                    JBCopy.setEnabled(true);
                 } catch (Exception ex) {
-                    JLNormalStatus.setText("Estado: Error");
-                    JLNormalStatus.setForeground(Color.RED);
-                    showMessage("Error en conversión: " + ex.getMessage());
+                    abortOutput();
+                    if (isCancellation(ex)) {
+                        JLNormalStatus.setText("Estado: Cancelado");
+                        JLNormalStatus.setForeground(Color.ORANGE);
+                        showMessage("Conversión cancelada");
+                    } else {
+                        JLNormalStatus.setText("Estado: Error");
+                        JLNormalStatus.setForeground(Color.RED);
+                        showMessage("Error en conversión: " + ex.getMessage());
+                    }
                 } finally {
-                    JBConvertion.setEnabled(true);
-                    JBConcurrentConvertion.setEnabled(true);
+                    setBusy(false);
+                    endCancellable();
                 }
             }
         };
@@ -170,6 +431,105 @@ public class XML_JSON extends JFrame{
         worker.execute();
     }
 
+    // El resultado ya está en la vista paginada (llegó por bloques): solo queda habilitar
+    // copiar y guardar
+    private void showResult() {
+        JBCopy.setEnabled(true);
+        JBSave.setEnabled(true);
+    }
+
+    // Antes de una conversión: la vista pasa a mostrar la nueva salida según llega
+    private void clearResult() {
+        xml = null;
+        JBCopy.setEnabled(false);
+        JBSave.setEnabled(false);
+    }
+
+    // Conversión en segundo plano que publica el XML en bloques según lo escribe el emisor, en
+    // orden. SwingWorker agrupa los bloques publicados y la vista los vuelca como mucho cada
+    // pocos ms, así que el EDT no recibe una actualización por bloque. El resultado es el texto
+    // completo formado por esos mismos bloques, sin copiarlo a otro buffer.
+    private abstract class OutputWorker extends SwingWorker<ChunkedText, String> {
+        // Se crea en el EDT, al construir el worker
+        private final PagedOutputView.Stream stream = outputView.startStream();
+
+        protected abstract void convert(Writer out) throws IOException;
+
+        @Override
+        protected ChunkedText doInBackground() throws Exception {
+            ChunkedText text = new ChunkedText();
+            try (Writer out = new ChunkWriter(text)) {
+                convert(out);
+            }
+            return text;
+        }
+
+        @Override
+        protected void process(List<String> chunks) {
+            for (String chunk : chunks) {
+                stream.append(chunk);
+            }
+        }
+
+        // En done(): el resultado completo, que también pasa a la vista
+        protected CharSequence finishOutput() throws Exception {
+            ChunkedText text = get();
+            stream.finish(text);
+            return text;
+        }
+
+        // En done() tras un error: la vista conserva lo recibido hasta entonces
+        protected void abortOutput() {
+            stream.abort();
+        }
+
+        // Writer del emisor: corta la salida en bloques de PUBLISH_CHUNK caracteres (y en cada
+        // flush) y los publica
+        private final class ChunkWriter extends Writer {
+            private final ChunkedText text;
+            private final StringBuilder current = new StringBuilder(PUBLISH_CHUNK);
+
+            ChunkWriter(ChunkedText text) {
+                this.text = text;
+            }
+
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                current.append(buffer, offset, length);
+                if (current.length() >= PUBLISH_CHUNK) {
+                    emit();
+                }
+            }
+
+            @Override
+            public void write(String str, int offset, int length) {
+                current.append(str, offset, offset + length);
+                if (current.length() >= PUBLISH_CHUNK) {
+                    emit();
+                }
+            }
+
+            @Override
+            public void flush() {
+                if (current.length() > 0) {
+                    emit();
+                }
+            }
+
+            @Override
+            public void close() {
+                flush();
+            }
+
+            private void emit() {
+                String chunk = current.toString();
+                current.setLength(0);
+                text.append(chunk);
+                publish(chunk);
+            }
+        }
+    }
+
     private void showMessage(String message){
         JLMessage.setText(message);
         Timer timer = new Timer(2000, e -> JLMessage.setText(""));
@@ -194,11 +554,13 @@ public class XML_JSON extends JFrame{
         JLConcurrentTaks.setText("Tareas: 0/0");
         JLConcurrentActive.setText("Hilos activos: 0");
         JLConcurrentProgress.setText("Progreso: 0%");
+        JLConcurrentBytes.setText("Entrada: - | XML: -");
         JLPoolParallelism.setText("Paralelismo: -");
         JLPoolSize.setText("Tamaño pool: -");
         JLPoolActive.setText("Activos: -");
         JLPoolRunning.setText("Ejecutando: -");
         JLPoolSteals.setText("Robos: -");
+        JLConcurrentMemory.setText("Memoria: -");
     }
 
     private void updateConcurrentStats(boolean isFinal) {
@@ -208,7 +570,7 @@ public class XML_JSON extends JFrame{
         JsonParserForkJoin.PoolStats poolStats = jpFJ.getPoolStats();
 
         long currentTime = isFinal ?
-                (concurrentEndTime - concurrentStartTime) :
+                TimeUnit.NANOSECONDS.toMillis(concurrentEndTime - concurrentStartTime) :
                 monitor.getExecutionTimeMs();
 
         JLConcurrentTime.setText("Tiempo: " + currentTime + " ms");
@@ -217,13 +579,29 @@ public class XML_JSON extends JFrame{
         JLConcurrentActive.setText("Hilos activos: " + monitor.getActiveThreads());
 
         double progress = monitor.getProgress();
-        JLConcurrentProgress.setText(String.format("Progreso: %.1f%%", progress));
+        long remaining = monitor.getEstimatedRemainingMs();
+        JLConcurrentProgress.setText(remaining < 0 ?
+                String.format("Progreso: %.1f%%", progress) :
+                String.format("Progreso: %.1f%% (restan ~%d ms)", progress, remaining));
+        JLConcurrentBytes.setText(String.format("Entrada: %d/%d KB | XML: %d KB",
+                monitor.getInputConsumed() / 1024, monitor.getInputLength() / 1024,
+                monitor.getOutputEmitted() / 1024));
         // Estadísticas del pool
         JLPoolParallelism.setText("Paralelismo: " + poolStats.getParallelism());
         JLPoolSize.setText("Tamaño pool: " + poolStats.getPoolSize());
         JLPoolActive.setText("Activos: " + poolStats.getActiveThreadCount());
         JLPoolRunning.setText("Ejecutando: " + poolStats.getRunningThreadCount());
         JLPoolSteals.setText("Robos: " + poolStats.getStealCount());
+
+        long allocated = monitor.getAllocatedBytes();
+        JLConcurrentMemory.setText("Memoria: " +
+                (allocated < 0 ? "" : "asignado " + megabytes(allocated) + " | ") +
+                "árbol ~" + megabytes(monitor.getTreeBytes()) +
+                " | búfer salida " + megabytes(monitor.getPeakOutputBuffer()));
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
     }
 
 }
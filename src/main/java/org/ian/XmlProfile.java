@@ -0,0 +1,65 @@
+package org.ian;
+
+// Perfil de correspondencia JSON -> XML que se elige en cada llamada.
+// ELEMENTS es el formato de siempre: cada escalar es un elemento <clave>valor</clave> en su
+// propia línea indentada. El perfil compacto (COMPACT o compact(...)) escribe los escalares de un
+// objeto como atributos de su elemento, los arrays de escalares como una lista delimitada en el
+// texto de un único elemento y no indenta; CompactXmlReader hace el camino inverso.
+public class XmlProfile {
+
+    public static final XmlProfile ELEMENTS = new XmlProfile(false, null, true);
+    public static final XmlProfile COMPACT = new XmlProfile(true, " ", true);
+
+    private final boolean attributes;
+    private final String listSeparator;
+    private final boolean itemWrappers;
+    // Separador tal como se escribe en el XML
+    private final String escapedSeparator;
+
+    private XmlProfile(boolean attributes, String listSeparator, boolean itemWrappers) {
+        this.attributes = attributes;
+        this.listSeparator = listSeparator;
+        this.itemWrappers = itemWrappers;
+        this.escapedSeparator = listSeparator == null ? null : CompactXmlWriter.escapeText(listSeparator);
+    }
+
+    // Perfil compacto con otro separador de listas o sin el elemento contenedor de cada array
+    // (sin él, cada elemento de "empleados": [...] se escribe como <empleados .../> repetido en
+    // lugar de <empleados><empleado .../></empleados>)
+    public static XmlProfile compact(String listSeparator, boolean itemWrappers) {
+        if (listSeparator == null || listSeparator.isEmpty()) {
+            throw new IllegalArgumentException("El separador de listas no puede estar vacío");
+        }
+        for (int i = 0; i < listSeparator.length(); i++) {
+            char c = listSeparator.charAt(i);
+            // Caracteres que aparecen en números y booleanos: la lista no se podría separar
+            if (Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '+') {
+                throw new IllegalArgumentException("Separador de listas no válido: \"" + listSeparator + "\"");
+            }
+        }
+        return new XmlProfile(true, listSeparator, itemWrappers);
+    }
+
+    public boolean isCompact() {
+        return attributes;
+    }
+
+    public String getListSeparator() {
+        return listSeparator;
+    }
+
+    public boolean isItemWrappers() {
+        return itemWrappers;
+    }
+
+    String getEscapedSeparator() {
+        return escapedSeparator;
+    }
+
+    @Override
+    public String toString() {
+        return attributes
+                ? String.format("XmlProfile[compact, listSeparator=\"%s\", itemWrappers=%b]", listSeparator, itemWrappers)
+                : "XmlProfile[elements]";
+    }
+}
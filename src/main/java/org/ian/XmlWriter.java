@@ -0,0 +1,413 @@
+package org.ian;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// Emisor XML no recursivo: recorre el árbol con una pila explícita de iteradores
+public class XmlWriter {
+
+    private static final int INITIAL_STACK = 32;
+
+    private static final Pattern INVALID_TAG_CHARS = Pattern.compile("[^a-zA-Z0-9_-]");
+    // Etiquetas saneadas que difieren de la clave original; compartida entre hilos y acotada
+    private static final int MAX_CACHED_TAGS = 4096;
+    private static final Map<String, String> SANITIZED_TAGS = new ConcurrentHashMap<>();
+
+    private final StringBuilder out;
+    // Destino opcional: el buffer se vuelca cuando supera flushThreshold caracteres
+    private final Writer sink;
+    private final int flushThreshold;
+    private char[] flushBuffer;
+    private CancellationToken cancellation;
+    // Planes para objetos planos de forma conocida; null desactiva el atajo
+    private ShapeRegistry shapes;
+    // Cuerpos de subárboles repetidos; null desactiva la memoización
+    private SubtreeCache.Session subtrees;
+    // Cuerpos que se están capturando para la caché: mientras haya alguno no se vuelca al Writer
+    private int captures;
+    // Niveles extra para una lista dentro de otra lista (1 en JsonParser, 2 en JsonParserForkJoin)
+    private int nestedListStep = 1;
+    private long valuesWritten;
+
+    // Pila explícita: iterador del contenedor, nivel de sus hijos, nombre de elemento
+    // (null en objetos) y etiqueta que queda por cerrar cuando termine el hijo actual
+    private Iterator<?>[] iterators = new Iterator<?>[INITIAL_STACK];
+    private int[] levels = new int[INITIAL_STACK];
+    private String[] itemNames = new String[INITIAL_STACK];
+    private String[] closeTags = new String[INITIAL_STACK];
+    // Con memoización: subárbol cuyo cuerpo se captura en cada nivel y su inicio en 'out'
+    private Object[] captureNodes = new Object[INITIAL_STACK];
+    private int[] captureStarts = new int[INITIAL_STACK];
+    private int depth;
+
+    public XmlWriter(StringBuilder out) {
+        this(out, null, Integer.MAX_VALUE);
+    }
+
+    // Emitir por bloques hacia un Writer: la memoria de salida queda acotada a ~flushThreshold
+    public XmlWriter(StringBuilder out, Writer sink, int flushThreshold) {
+        this.out = out;
+        this.sink = sink;
+        this.flushThreshold = flushThreshold;
+    }
+
+    // Volcar al Writer lo acumulado en el buffer
+    public void flush() throws IOException {
+        if (sink == null || out.length() == 0) {
+            return;
+        }
+        int length = out.length();
+        if (flushBuffer == null || flushBuffer.length < length) {
+            flushBuffer = new char[Math.max(length, 8192)];
+        }
+        out.getChars(0, length, flushBuffer, 0);
+        sink.write(flushBuffer, 0, length);
+        out.setLength(0);
+    }
+
+    public void setCancellationToken(CancellationToken cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    public void setShapeRegistry(ShapeRegistry shapes) {
+        this.shapes = shapes;
+    }
+
+    public void setSubtreeCache(SubtreeCache.Session subtrees) {
+        this.subtrees = subtrees;
+    }
+
+    public void setNestedListStep(int nestedListStep) {
+        this.nestedListStep = nestedListStep;
+    }
+
+    // Valores escritos dentro de contenedores (no incluye el valor raíz)
+    public long getValuesWritten() {
+        return valuesWritten;
+    }
+
+    // Equivalente a JsonParser.valueToXML(value, level)
+    @SuppressWarnings("unchecked")
+    public void writeValue(Object value, int level) {
+        if (value == null) {
+            return;
+        }
+
+        if (value instanceof Map) {
+            writeMap((Map<String, Object>) value, level);
+        } else if (value instanceof List) {
+            writeList((List<Object>) value, level, "item");
+        } else {
+            appendEscaped(out, String.valueOf(value));
+        }
+    }
+
+    public void writeMap(Map<String, Object> map, int level) {
+        if (shapes != null && shapes.emit(out, map, level)) {
+            valuesWritten += map.size();
+            return;
+        }
+        push(map.entrySet().iterator(), level, null);
+        drain();
+    }
+
+    public void writeList(List<Object> list, int level, String propertyName) {
+        String itemName = toSingular(propertyName);
+        if (writePrimitives(list, level, itemName)) {
+            return;
+        }
+        push(list.iterator(), level, itemName);
+        drain();
+    }
+
+    // Lista sobre array primitivo: se escribe por bloques de índices, sin pasar por la pila
+    private boolean writePrimitives(List<?> list, int level, String itemName) {
+        if (!(list instanceof PrimitiveList<?> primitives)) {
+            return false;
+        }
+        int size = primitives.size();
+        for (int from = 0; from < size; from += PrimitiveList.CHUNK) {
+            if (cancellation != null) {
+                cancellation.throwIfCancelled();
+            }
+            primitives.appendItems(out, from, Math.min(size, from + PrimitiveList.CHUNK), level, itemName);
+            flushIfFull();
+        }
+        valuesWritten += size;
+        return true;
+    }
+
+    private void flushIfFull() {
+        if (captures == 0 && out.length() >= flushThreshold) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        while (depth > 0) {
+            flushIfFull();
+
+            int top = depth - 1;
+            int level = levels[top];
+
+            if (closeTags[top] != null) {
+                indent(out, level);
+                out.append("</").append(closeTags[top]).append(">\n");
+                closeTags[top] = null;
+            }
+
+            Iterator<?> iterator = iterators[top];
+            if (!iterator.hasNext()) {
+                if (captureNodes[top] != null) {
+                    endCapture(captureNodes[top], levels[top], itemNames[top], captureStarts[top]);
+                }
+                pop();
+                continue;
+            }
+
+            if (cancellation != null) {
+                cancellation.throwIfCancelled();
+            }
+            valuesWritten++;
+
+            String itemName = itemNames[top];
+            String tag;
+            Object value;
+            if (itemName == null) {
+                Map.Entry<String, Object> entry = (Map.Entry<String, Object>) iterator.next();
+                tag = sanitizeTagName(entry.getKey());
+                value = entry.getValue();
+            } else {
+                tag = itemName;
+                value = iterator.next();
+            }
+
+            indent(out, level);
+            out.append('<').append(tag).append('>');
+
+            if (value instanceof Map) {
+                out.append('\n');
+                Map<String, Object> map = (Map<String, Object>) value;
+                int start = out.length();
+                if (subtrees != null && appendCached(map, level + 1, null)) {
+                    indent(out, level);
+                    out.append("</").append(tag).append(">\n");
+                    continue;
+                }
+                if (shapes != null && emitShape(map, level + 1, start)) {
+                    valuesWritten += map.size();
+                    indent(out, level);
+                    out.append("</").append(tag).append(">\n");
+                    continue;
+                }
+                closeTags[top] = tag;
+                push(map.entrySet().iterator(), level + 1, null);
+                beginCapture(map, start);
+            } else if (value instanceof List) {
+                out.append('\n');
+                List<Object> list = (List<Object>) value;
+                int childLevel = itemName == null ? level + 1 : level + nestedListStep;
+                String childName = itemName == null ? toSingular(tag) : "item";
+                int start = out.length();
+                if (subtrees != null && appendCached(list, childLevel, childName)) {
+                    indent(out, level);
+                    out.append("</").append(tag).append(">\n");
+                    continue;
+                }
+                if (list instanceof PrimitiveList) {
+                    // Sin pila: la captura abarca solo la llamada
+                    boolean capture = subtrees != null && subtrees.shouldStore(list);
+                    if (capture) {
+                        captures++;
+                    }
+                    writePrimitives(list, childLevel, childName);
+                    if (capture) {
+                        endCapture(list, childLevel, childName, start);
+                    }
+                    indent(out, level);
+                    out.append("</").append(tag).append(">\n");
+                    continue;
+                }
+                closeTags[top] = tag;
+                push(list.iterator(), childLevel, childName);
+                beginCapture(list, start);
+            } else {
+                if (value != null) {
+                    appendEscaped(out, String.valueOf(value));
+                }
+                out.append("</").append(tag).append(">\n");
+            }
+        }
+    }
+
+    // Cuerpo de un subárbol repetido ya convertido con el mismo nivel y nombre de elemento
+    private boolean appendCached(Object node, int childLevel, String childName) {
+        String body = subtrees.lookup(node, childLevel, childName);
+        if (body == null) {
+            return false;
+        }
+        out.append(body);
+        valuesWritten += subtrees.valueCount(node);
+        return true;
+    }
+
+    private boolean emitShape(Map<String, Object> map, int childLevel, int start) {
+        if (!shapes.emit(out, map, childLevel)) {
+            return false;
+        }
+        if (subtrees != null && subtrees.shouldStore(map)) {
+            subtrees.store(map, childLevel, null, out, start, out.length());
+        }
+        return true;
+    }
+
+    // El cuerpo del contenedor recién apilado empieza en 'start'; se guarda al desapilarlo
+    private void beginCapture(Object node, int start) {
+        if (subtrees != null && subtrees.shouldStore(node)) {
+            captureNodes[depth - 1] = node;
+            captureStarts[depth - 1] = start;
+            captures++;
+        }
+    }
+
+    private void endCapture(Object node, int childLevel, String childName, int start) {
+        subtrees.store(node, childLevel, childName, out, start, out.length());
+        captures--;
+    }
+
+    private void push(Iterator<?> iterator, int level, String itemName) {
+        if (depth == iterators.length) {
+            iterators = Arrays.copyOf(iterators, depth * 2);
+            levels = Arrays.copyOf(levels, depth * 2);
+            itemNames = Arrays.copyOf(itemNames, depth * 2);
+            closeTags = Arrays.copyOf(closeTags, depth * 2);
+            captureNodes = Arrays.copyOf(captureNodes, depth * 2);
+            captureStarts = Arrays.copyOf(captureStarts, depth * 2);
+        }
+        iterators[depth] = iterator;
+        levels[depth] = level;
+        itemNames[depth] = itemName;
+        closeTags[depth] = null;
+        depth++;
+    }
+
+    private void pop() {
+        depth--;
+        iterators[depth] = null;
+        itemNames[depth] = null;
+        closeTags[depth] = null;
+        captureNodes[depth] = null;
+    }
+
+    // ========== UTILIDADES COMPARTIDAS POR LOS CONVERSORES ==========
+
+    static void indent(StringBuilder sb, int level) {
+        for (int i = 0; i < level; i++) {
+            sb.append("  ");
+        }
+    }
+
+    static String indent(int level) {
+        return "  ".repeat(level);
+    }
+
+    // Sanitizar nombre de etiqueta XML; las claves válidas (lo habitual) se devuelven tal cual
+    static String sanitizeTagName(String name) {
+        if (isValidTagName(name)) {
+            return name;
+        }
+
+        String tag = SANITIZED_TAGS.get(name);
+        boolean hit = tag != null;
+        if (!hit) {
+            tag = INVALID_TAG_CHARS.matcher(name).replaceAll("_");
+            if (SANITIZED_TAGS.size() < MAX_CACHED_TAGS) {
+                SANITIZED_TAGS.put(name, tag);
+            }
+        }
+        ConversionEvents.cacheAccess("tags", hit);
+        return tag;
+    }
+
+    private static boolean isValidTagName(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+                    (c >= '0' && c <= '9') || c == '_' || c == '-';
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Escapar caracteres especiales XML
+    static String escapeXML(String text) {
+        // Sin caracteres a escapar se devuelve el mismo String
+        if (!needsEscape(text)) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        appendEscaped(sb, text);
+        return sb.toString();
+    }
+
+    static void appendEscaped(StringBuilder sb, String text) {
+        if (!needsEscape(text)) {
+            sb.append(text);
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '"': sb.append("&quot;"); break;
+                case '\'': sb.append("&apos;"); break;
+                default: sb.append(c);
+            }
+        }
+    }
+
+    private static boolean needsEscape(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '&' || c == '<' || c == '>' || c == '"' || c == '\'') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Convertir plural a singular (reglas básicas en español e inglés)
+    static String toSingular(String plural) {
+        if (plural == null || plural.isEmpty()) {
+            return "item";
+        }
+
+        plural = plural.toLowerCase();
+
+        if (plural.endsWith("ies")) {
+            // hobbies -> hobby
+            return plural.substring(0, plural.length() - 3) + "y";
+        } else if (plural.endsWith("es")) {
+            // caracteres -> caracter
+            return plural.substring(0, plural.length() - 2);
+        } else if (plural.endsWith("s")) {
+            // empleados -> empleado, libros -> libro
+            return plural.substring(0, plural.length() - 1);
+        }
+
+        return plural;
+    }
+}